@@ -664,7 +664,10 @@ void write_indexed_binary(const unsigned int* vtable,
     }
 
     // chunk stuff
-    uint16_t CHUNK_SIZE = 32;
+    // Version 2: 16^3 chunks, one Minecraft chunk section each
+    uint16_t CHUNK_SIZE = 16;
+    // Bit 0 of a chunk record's reserved field: the type 1 chunk is fully occupied
+    const uint16_t CHUNK_FLAG_SOLID = 1;
     uint16_t sizeX = (uint16_t)v_info.gridsize.x;
     uint16_t sizeY = (uint16_t)v_info.gridsize.y;
     uint16_t sizeZ = (uint16_t)v_info.gridsize.z;
@@ -689,7 +692,7 @@ void write_indexed_binary(const unsigned int* vtable,
 
     // Write header
     out.write("VXCH", 4);
-    write_u32(out, 1); // version
+    write_u32(out, 2); // version
 
     write_u16(out, CHUNK_SIZE);
     write_u16(out, sizeX);
@@ -708,6 +711,10 @@ void write_indexed_binary(const unsigned int* vtable,
         write_u8(out, c.w);
     }
 
+    // Block palette: empty here, the plugin resolves colors to blocks itself
+    // (a converted file carries one block ID per color)
+    write_u32(out, 0);
+
     struct ChunkRecord {
         uint64_t offset;
         uint32_t compressedSize;
@@ -762,6 +769,7 @@ void write_indexed_binary(const unsigned int* vtable,
                 size_t voxelsInChunk = (size_t)xCount*yCount*zCount;
                 bool anyVoxel=false; bool allSame=true;
                 uint16_t firstNonZeroIndex=0;
+                size_t filledCount=0;
 
                 std::vector<uint16_t> localColors(voxelsInChunk,0);
                 for(uint32_t zz=0; zz<zCount; zz++){
@@ -771,6 +779,7 @@ void write_indexed_binary(const unsigned int* vtable,
                             uint16_t ci = getVoxel(x0+xx, y0+yy, z0+zz);
                             localColors[loc]=ci;
                             if(ci!=0){
+                                filledCount++;
                                 if(!anyVoxel){
                                     anyVoxel=true; firstNonZeroIndex=ci;
                                 } else {
@@ -785,8 +794,12 @@ void write_indexed_binary(const unsigned int* vtable,
                     chunkIndex++;
                     continue;
                 }
-                if(allSame){
+                // Type 1 carries no bitmask, so it is only valid when every cell
+                // is occupied; the solid flag tells readers the record can be
+                // expanded as a fill (older files used type 1 for any single-color chunk)
+                if(allSame && filledCount==voxelsInChunk){
                     rec.chunkType=1;
+                    rec.reserved=CHUNK_FLAG_SOLID;
                 } else {
                     rec.chunkType=2;
                 }
@@ -848,6 +861,13 @@ void write_indexed_binary(const unsigned int* vtable,
     out.seekp(endPos);
     out.close();
 
+    // Always printed (and flushed) once the file is complete, so a caller
+    // reading our stdout can start on this tile while the batch continues
+    if(!out.fail()){
+        fprintf(stdout, "VXCH_WRITTEN %s\n", filename_output.c_str());
+        fflush(stdout);
+    }
+
 #ifndef SILENT
 PRINT_DEBUG("[I/O] Wrote chunked voxel file: %s\n", filename_output.c_str());
 PRINT_DEBUG("      Dimensions= (%d x %d x %d)\n", sizeX, sizeY, sizeZ);
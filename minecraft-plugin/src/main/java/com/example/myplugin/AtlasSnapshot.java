@@ -0,0 +1,40 @@
+package com.example.voxelearth;
+
+import java.util.Collections;
+
+/**
+ * A loaded block atlas: its {@link LabPalette}, the {@link ColorLut} over it
+ * once built, and the {@link ColorCache} of colors matched with it.
+ *
+ * Snapshots never change, apart from the cache filling in answers the
+ * palette would give anyway. Reloading the atlas, or finishing its table,
+ * swaps in a new snapshot whole, so a lookup always reads a palette, table
+ * and cache that belong together, without taking a lock.
+ */
+final class AtlasSnapshot {
+
+    static final AtlasSnapshot EMPTY = new AtlasSnapshot(new LabPalette(Collections.emptyList()), null);
+
+    final LabPalette palette;
+    /** Null until the table is built or mapped. */
+    final ColorLut lut;
+    final ColorCache colors;
+    /** {@link LabPalette#fingerprint} of the palette, to tell whether a reload changed anything. */
+    final long fingerprint;
+
+    AtlasSnapshot(LabPalette palette, ColorLut lut) {
+        this(palette, lut, new ColorCache(), palette.fingerprint());
+    }
+
+    private AtlasSnapshot(LabPalette palette, ColorLut lut, ColorCache colors, long fingerprint) {
+        this.palette = palette;
+        this.lut = lut;
+        this.colors = colors;
+        this.fingerprint = fingerprint;
+    }
+
+    /** This atlas with its color table, keeping the colors cached so far. */
+    AtlasSnapshot withLut(ColorLut lut) {
+        return new AtlasSnapshot(palette, lut, colors, fingerprint);
+    }
+}
@@ -1551,6 +1551,48 @@ public class BlockChanger {
 		return workloadFinishFuture;
 	}
 
+	/**
+	 * Fills a cuboid with the same result as
+	 * {@link #setSectionCuboidAsynchronously(Location, Location, ItemStack)} but
+	 * queues one workload per 16x16x16 section instead of one per block. Each
+	 * workload resolves its chunk section once and writes every cell of it
+	 * directly; tile entities are not removed and neither neighbours nor clients
+	 * are notified per block, so refresh the affected chunks once it completes.
+	 * 
+	 * @param loc1      point 1
+	 * @param loc2      point 2
+	 * @param itemStack ItemStack to apply on the blocks
+	 */
+	public static CompletableFuture<Void> fillSectionCuboidAsynchronously(Location loc1, Location loc2,
+			ItemStack itemStack) {
+		World world = loc1.getWorld();
+		Object nmsWorld = getWorld(world);
+		Object blockData = getBlockData(itemStack);
+		int x1 = Math.min(loc1.getBlockX(), loc2.getBlockX());
+		int y1 = Math.min(loc1.getBlockY(), loc2.getBlockY());
+		int z1 = Math.min(loc1.getBlockZ(), loc2.getBlockZ());
+		int x2 = Math.max(loc1.getBlockX(), loc2.getBlockX());
+		int y2 = Math.max(loc1.getBlockY(), loc2.getBlockY());
+		int z2 = Math.max(loc1.getBlockZ(), loc2.getBlockZ());
+		CompletableFuture<Void> workloadFinishFuture = new CompletableFuture<>();
+		WorkloadRunnable workloadRunnable = new WorkloadRunnable();
+		BukkitTask workloadTask = Bukkit.getScheduler().runTaskTimer(PLUGIN, workloadRunnable, 1, 1);
+		for (int sx = x1 >> 4; sx <= x2 >> 4; sx++) {
+			for (int sy = y1 >> 4; sy <= y2 >> 4; sy++) {
+				for (int sz = z1 >> 4; sz <= z2 >> 4; sz++) {
+					workloadRunnable.addWorkload(new SectionFillWorkload(nmsWorld, blockData,
+							Math.max(x1, sx << 4), Math.max(y1, sy << 4), Math.max(z1, sz << 4),
+							Math.min(x2, (sx << 4) + 15), Math.min(y2, (sy << 4) + 15), Math.min(z2, (sz << 4) + 15)));
+				}
+			}
+		}
+		workloadRunnable.whenComplete(() -> {
+			workloadFinishFuture.complete(null);
+			workloadTask.cancel();
+		});
+		return workloadFinishFuture;
+	}
+
 	private static Object getSection(Object nmsChunk, Object[] sections, int y) {
 		return BLOCK_UPDATER.getSection(nmsChunk, sections, y);
 	}
@@ -2252,6 +2294,45 @@ public class BlockChanger {
 
 	}
 
+	private static class SectionFillWorkload implements Workload {
+
+		private Object nmsWorld;
+		private Object blockData;
+		private int minX, minY, minZ;
+		private int maxX, maxY, maxZ;
+
+		/**
+		 * All bounds are inclusive and must lie within a single section.
+		 */
+		public SectionFillWorkload(Object nmsWorld, Object blockData, int minX, int minY, int minZ, int maxX,
+				int maxY, int maxZ) {
+			this.nmsWorld = nmsWorld;
+			this.blockData = blockData;
+			this.minX = minX;
+			this.minY = minY;
+			this.minZ = minZ;
+			this.maxX = maxX;
+			this.maxY = maxY;
+			this.maxZ = maxZ;
+		}
+
+		@Override
+		public boolean compute() {
+			Object nmsChunk = BlockChanger.getChunkAt(nmsWorld, minX, minZ);
+			Object[] sections = BlockChanger.getSections(nmsChunk);
+			Object section = BlockChanger.getSection(nmsChunk, sections, minY);
+			for (int y = minY; y <= maxY; y++) {
+				for (int z = minZ; z <= maxZ; z++) {
+					for (int x = minX; x <= maxX; x++) {
+						BlockChanger.setTypeChunkSection(section, x & 15, y & 15, z & 15, blockData);
+					}
+				}
+			}
+			return true;
+		}
+
+	}
+
 	private static class WhenCompleteWorkload implements Workload {
 
 		private Runnable runnable;
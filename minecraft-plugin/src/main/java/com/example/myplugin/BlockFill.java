@@ -0,0 +1,31 @@
+package com.example.voxelearth;
+
+import org.bukkit.Material;
+
+/**
+ * A box of identical blocks, decoded from a solid VXCH chunk so it can be
+ * placed as one cuboid instead of one map entry per voxel. Bounds are
+ * inclusive block coordinates.
+ */
+class BlockFill {
+    // Heap per fill: object header, six ints and a reference, plus its list slot
+    static final int FOOTPRINT_BYTES = 48;
+
+    final int minX, minY, minZ;
+    final int maxX, maxY, maxZ;
+    final Material material;
+
+    BlockFill(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, Material material) {
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.maxZ = maxZ;
+        this.material = material;
+    }
+
+    boolean contains(int x, int y, int z) {
+        return x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ;
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.voxelearth;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Colors already matched against one atlas, shared by every decode thread.
+ *
+ * A fixed table of SLOTS longs, each holding a 24-bit color and the palette
+ * index it matched, so a lookup is one atomic read and never takes a lock.
+ * A color hashes to a single slot and replaces whatever was there, which
+ * bounds the size; neighbouring tiles reuse most of their colors, so they
+ * rarely push each other's out.
+ *
+ * A cache belongs to an {@link AtlasSnapshot} and is dropped with it when the
+ * atlas changes.
+ */
+final class ColorCache {
+
+    /** Returned by {@link #get} for a color that isn't cached. */
+    static final int MISS = -2;
+
+    private static final int SLOT_BITS = 16;
+    // Set in used slots, so color 0x000000 isn't confused with an empty slot
+    private static final long PRESENT = 1L << 56;
+
+    private final AtomicLongArray slots = new AtomicLongArray(1 << SLOT_BITS);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Palette index cached for a color packed as 0xRRGGBB, which may be -1
+     * for no match, or MISS.
+     */
+    int get(int rgb) {
+        long entry = slots.get(slot(rgb));
+        if ((entry & PRESENT) != 0 && (int) (entry >>> 32 & 0xFFFFFF) == rgb) {
+            hits.increment();
+            return (int) entry;
+        }
+        misses.increment();
+        return MISS;
+    }
+
+    void put(int rgb, int index) {
+        // Racing writers each store a complete entry; readers check the color
+        slots.lazySet(slot(rgb), PRESENT | (long) rgb << 32 | (index & 0xFFFFFFFFL));
+    }
+
+    /** One-line summary of the counters, for /tilecache. */
+    String stats() {
+        long h = hits.sum(), m = misses.sum();
+        return String.format("hits %d, misses %d (%.1f%% hit)", h, m, h + m == 0 ? 0.0 : 100.0 * h / (h + m));
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    private static int slot(int rgb) {
+        return (rgb * 0x9E3779B1) >>> (32 - SLOT_BITS);
+    }
+}
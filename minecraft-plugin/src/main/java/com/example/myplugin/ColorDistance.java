@@ -0,0 +1,83 @@
+package com.example.voxelearth;
+
+/**
+ * The color difference colors are matched against the atlas with.
+ *
+ * Each metric works on its own coordinates: CIELAB, or plain sRGB for
+ * REDMEAN. {@link LabPalette} stores the atlas in them and {@link LabTree}
+ * bounds the search by them. CIEDE2000 is the most faithful and the
+ * slowest; the others trade some matches for speed, see
+ * ColorDistanceBenchmark.
+ *
+ * The metric is chosen with -Dvoxelearth.colorMetric, or per world with
+ * -Dvoxelearth.colorMetric.&lt;world&gt;, as ciede2000 (default), cie94,
+ * cie76 or redmean.
+ */
+enum ColorDistance {
+
+    CIEDE2000(10.0, 1.2f) {
+        @Override
+        double distance(double x1, double y1, double z1, double x2, double y2, double z2) {
+            return ColorUtils.deltaE(x1, y1, z1, x2, y2, z2);
+        }
+    },
+    CIE94(8.5, 0.9f) {
+        @Override
+        double distance(double x1, double y1, double z1, double x2, double y2, double z2) {
+            return ColorUtils.deltaE94(x1, y1, z1, x2, y2, z2);
+        }
+    },
+    CIE76(12.5, 0.9f) {
+        @Override
+        double distance(double x1, double y1, double z1, double x2, double y2, double z2) {
+            return ColorUtils.deltaE76(x1, y1, z1, x2, y2, z2);
+        }
+    },
+    REDMEAN(310.0, 12f) {
+        @Override
+        void coordinates(int r, int g, int b, float[] out, int offset) {
+            out[offset] = r;
+            out[offset + 1] = g;
+            out[offset + 2] = b;
+        }
+
+        @Override
+        double distance(double x1, double y1, double z1, double x2, double y2, double z2) {
+            return ColorUtils.redmean(x1, y1, z1, x2, y2, z2);
+        }
+    };
+
+    /**
+     * Beyond this distance from every atlas entry, a color is not matched.
+     * CIEDE2000's 10 is scaled to the others by the 99th percentile of the
+     * distance from random colors to their nearest vanilla atlas entry.
+     */
+    final double maxMatchDistance;
+    /** Twice the largest distance from the middle of a ColorLut cell to its corners. */
+    final float lutMargin;
+
+    ColorDistance(double maxMatchDistance, float lutMargin) {
+        this.maxMatchDistance = maxMatchDistance;
+        this.lutMargin = lutMargin;
+    }
+
+    /** The metric's coordinates for an 8-bit color, written to out[offset..offset+2]. */
+    void coordinates(int r, int g, int b, float[] out, int offset) {
+        ColorUtils.rgbToLab(r, g, b, out, offset);
+    }
+
+    /** Distance between two colors in the metric's coordinates; the first is the query. */
+    abstract double distance(double x1, double y1, double z1, double x2, double y2, double z2);
+
+    /** The metric configured for a world, or the default one if {@code worldName} is null. */
+    static ColorDistance forWorld(String worldName) {
+        String name = worldName == null ? null : System.getProperty("voxelearth.colorMetric." + worldName);
+        if (name == null) name = System.getProperty("voxelearth.colorMetric", "ciede2000");
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.out.println("[WARN] Unknown color metric " + name + ", using CIEDE2000");
+            return CIEDE2000;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.voxelearth;
+
+import org.bukkit.Material;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * sRGB quantized to BITS bits per channel, mapped to the atlas entry
+ * {@link LabPalette#match} picks for the middle of each cell, so matching a
+ * color is one table read.
+ *
+ * The atlas is dense enough that the answer often changes inside a cell:
+ * with CIEDE2000, about 8% of colors get another entry than an exact match
+ * would give, one that is at most about the metric's margin
+ * ({@link ColorDistance#lutMargin}) further away. Cells where that can
+ * happen (the two closest materials are within the margin of each other,
+ * or the closest is within it of the match threshold) are flagged, and
+ * lookups asked to be exact return null for them.
+ *
+ * Building runs one exact match per cell, a few seconds on a single core,
+ * so the table is written to disk and memory-mapped on later boots. File
+ * layout, little-endian:
+ *
+ *   "VXLT" | u32 version | u32 bits | f32 maxDistance | f32 margin | u32 reserved
+ *   | u64 atlas fingerprint | u16 cells[1 << 3 * bits]
+ *
+ * A cell is an atlas index, NO_MATCH for the fallback material, with
+ * REFINE set if it is flagged. A file for another atlas, metric, threshold
+ * or layout is rebuilt.
+ */
+final class ColorLut {
+
+    static final int BITS = 6;
+
+    private static final byte[] MAGIC = {'V', 'X', 'L', 'T'};
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+
+    private static final int REFINE = 0x8000;
+    private static final int NO_MATCH = 0x7FFF;
+
+    private final LabPalette palette;
+    private final ShortBuffer cells;
+    private final int shift = 8 - BITS;
+
+    private ColorLut(LabPalette palette, ShortBuffer cells) {
+        this.palette = palette;
+        this.cells = cells;
+    }
+
+    /** The palette the table was built from. */
+    LabPalette palette() {
+        return palette;
+    }
+
+    /**
+     * Material for an 8-bit color: the atlas match for its cell, or
+     * {@code fallback} if nothing was within the threshold. With
+     * {@code exact}, null if the cell is flagged and the color should be
+     * matched with the palette instead.
+     */
+    Material lookup(int r, int g, int b, Material fallback, boolean exact) {
+        int cell = cells.get(((r >>> shift) << BITS | (g >>> shift)) << BITS | (b >>> shift)) & 0xFFFF;
+        if (exact && (cell & REFINE) != 0) return null;
+        cell &= ~REFINE;
+        return cell == NO_MATCH ? fallback : palette.material(cell);
+    }
+
+    /**
+     * Maps the table in {@code file} if it was built from this palette and
+     * threshold, else builds it and writes it there. Returns null only if
+     * building fails; a file that can't be written just isn't reused.
+     */
+    static ColorLut loadOrBuild(File file, LabPalette palette, double maxDistance) {
+        if (palette.size() == 0 || palette.size() >= NO_MATCH) return null;
+        long fingerprint = palette.fingerprint();
+        try {
+            ColorLut lut = map(file, palette, maxDistance, fingerprint);
+            if (lut != null) return lut;
+        } catch (IOException e) {
+            System.out.println("[WARN] Could not read color table " + file + ": " + e.getMessage());
+        }
+
+        ByteBuffer built = build(palette, maxDistance, fingerprint);
+        try {
+            write(file, built);
+        } catch (IOException e) {
+            System.out.println("[WARN] Could not write color table " + file + ": " + e.getMessage());
+        }
+        built.position(HEADER_BYTES);
+        return new ColorLut(palette, built.slice().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer());
+    }
+
+    private static ColorLut map(File file, LabPalette palette, double maxDistance, long fingerprint) throws IOException {
+        if (!file.isFile() || file.length() != HEADER_BYTES + 2L * cellCount()) return null;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            byte[] magic = new byte[4];
+            mapped.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || mapped.getInt() != VERSION || mapped.getInt() != BITS
+                    || mapped.getFloat() != (float) maxDistance || mapped.getFloat() != palette.metric().lutMargin) {
+                return null;
+            }
+            mapped.getInt();
+            if (mapped.getLong() != fingerprint) return null;
+            mapped.position(HEADER_BYTES);
+            return new ColorLut(palette, mapped.slice().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer());
+        }
+    }
+
+    // One exact match per cell. Rows of cells along b are spread over the common pool;
+    // within a row each search starts from the previous cell's answer.
+    private static ByteBuffer build(LabPalette palette, double maxDistance, long fingerprint) {
+        int shift = 8 - BITS;
+        int mask = (1 << BITS) - 1;
+        int center = 1 << shift >> 1;
+        float margin = palette.metric().lutMargin;
+        short[] cells = new short[cellCount()];
+        IntStream.range(0, cells.length >>> BITS).parallel().forEach(row -> {
+            int r = (row >>> BITS) << shift | center;
+            int g = (row & mask) << shift | center;
+            double[] distances = new double[2];
+            int hint = -1;
+            for (int i = row << BITS, cb = 0; cb <= mask; i++, cb++) {
+                int best = palette.nearest(r, g, cb << shift | center, distances, hint);
+                int cell = distances[0] <= maxDistance ? best : NO_MATCH;
+                if (distances[1] - distances[0] < margin || Math.abs(distances[0] - maxDistance) < margin) {
+                    cell |= REFINE;
+                }
+                cells[i] = (short) cell;
+                hint = best;
+            }
+        });
+
+        ByteBuffer out = ByteBuffer.allocate(HEADER_BYTES + 2 * cells.length).order(ByteOrder.LITTLE_ENDIAN);
+        out.put(MAGIC).putInt(VERSION).putInt(BITS).putFloat((float) maxDistance).putFloat(margin).putInt(0)
+            .putLong(fingerprint);
+        out.asShortBuffer().put(cells);
+        return out;
+    }
+
+    // Written beside the target and renamed, so a crash never leaves a half-written table.
+    // The temp file is unique because generators sharing a metric may build at once.
+    private static void write(File file, ByteBuffer table) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+        Path tmp = Files.createTempFile(dir.toPath(), file.getName(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                ByteBuffer data = table.duplicate();
+                data.position(0);
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            }
+            Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static int cellCount() {
+        return 1 << 3 * BITS;
+    }
+}
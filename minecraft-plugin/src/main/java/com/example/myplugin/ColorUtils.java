@@ -4,12 +4,35 @@ import java.awt.Color;
 
 public class ColorUtils {
 
+    private static final double POW_25_7 = pow7(25.0);
+
+    // x^7 by multiplication; Math.pow is far slower and this runs per atlas entry
+    private static double pow7(double x) {
+        double x2 = x * x;
+        return x2 * x2 * x2 * x;
+    }
+
     // Convert RGB to CIELAB
     public static double[] rgbToLab(Color color) {
         double[] xyz = rgbToXyz(color);
         return xyzToLab(xyz);
     }
 
+    // Convert 8-bit RGB to CIELAB, written to out[offset..offset+2]; same result as rgbToLab(Color)
+    public static void rgbToLab(int red, int green, int blue, float[] out, int offset) {
+        double r = pivotRgb(red / 255.0);
+        double g = pivotRgb(green / 255.0);
+        double b = pivotRgb(blue / 255.0);
+
+        double x = pivotXyz((r * 0.4124 + g * 0.3576 + b * 0.1805) / 95.047);
+        double y = pivotXyz((r * 0.2126 + g * 0.7152 + b * 0.0722) / 100.000);
+        double z = pivotXyz((r * 0.0193 + g * 0.1192 + b * 0.9505) / 108.883);
+
+        out[offset] = (float) ((116 * y) - 16);
+        out[offset + 1] = (float) (500 * (x - y));
+        out[offset + 2] = (float) (200 * (y - z));
+    }
+
     // Convert RGB to XYZ
     private static double[] rgbToXyz(Color color) {
         double r = pivotRgb(color.getRed() / 255.0);
@@ -50,25 +73,48 @@ public class ColorUtils {
         return (n > 0.008856) ? Math.cbrt(n) : (7.787 * n) + (16.0 / 116.0);
     }
 
+    // CIE76: Euclidean distance in Lab
+    public static double deltaE76(double L1, double a1, double b1, double L2, double a2, double b2) {
+        double dL = L1 - L2, da = a1 - a2, db = b1 - b2;
+        return Math.sqrt(dL * dL + da * da + db * db);
+    }
+
+    // CIE94 with the graphic arts weights; the first color is the reference
+    public static double deltaE94(double L1, double a1, double b1, double L2, double a2, double b2) {
+        double C1 = Math.sqrt(a1 * a1 + b1 * b1);
+        double C2 = Math.sqrt(a2 * a2 + b2 * b2);
+        double dL = L1 - L2, dC = C1 - C2, da = a1 - a2, db = b1 - b2;
+        double dH2 = Math.max(0, da * da + db * db - dC * dC);
+        double SC = 1 + 0.045 * C1;
+        double SH = 1 + 0.015 * C1;
+        return Math.sqrt(dL * dL + dC * dC / (SC * SC) + dH2 / (SH * SH));
+    }
+
+    // "Redmean" weighted RGB distance on 0-255 channels, a cheap approximation of perceived difference
+    public static double redmean(double r1, double g1, double b1, double r2, double g2, double b2) {
+        double rMean = (r1 + r2) / 2;
+        double dr = r1 - r2, dg = g1 - g2, db = b1 - b2;
+        return Math.sqrt((2 + rMean / 256) * dr * dr + 4 * dg * dg + (2 + (255 - rMean) / 256) * db * db);
+    }
+
     // Calculate Delta E (CIEDE2000)
     public static double deltaE(double[] lab1, double[] lab2) {
+        return deltaE(lab1[0], lab1[1], lab1[2], lab2[0], lab2[1], lab2[2]);
+    }
+
+    // CIEDE2000 on unpacked Lab values, for matching against packed tables
+    public static double deltaE(double L1, double a1, double b1, double L2, double a2, double b2) {
         // Implementation based on the CIEDE2000 formula
         // Reference: https://en.wikipedia.org/wiki/Color_difference#CIEDE2000
 
-        double L1 = lab1[0];
-        double a1 = lab1[1];
-        double b1 = lab1[2];
-        double L2 = lab2[0];
-        double a2 = lab2[1];
-        double b2 = lab2[2];
-
         double avgLp = (L1 + L2) / 2.0;
 
         double C1 = Math.sqrt(a1 * a1 + b1 * b1);
         double C2 = Math.sqrt(a2 * a2 + b2 * b2);
         double avgC = (C1 + C2) / 2.0;
 
-        double G = 0.5 * (1 - Math.sqrt(Math.pow(avgC, 7.0) / (Math.pow(avgC, 7.0) + Math.pow(25.0, 7.0))));
+        double avgC7 = pow7(avgC);
+        double G = 0.5 * (1 - Math.sqrt(avgC7 / (avgC7 + POW_25_7)));
 
         double a1p = (1 + G) * a1;
         double a2p = (1 + G) * a2;
@@ -108,20 +154,21 @@ public class ColorUtils {
         double deltaCp = C2p - C1p;
         double deltaHpDeg = 2 * Math.sqrt(C1p * C2p) * Math.sin(deltaHp / 2.0);
 
-        double SL = 1 + ((0.015 * Math.pow(avgLp - 50, 2)) / Math.sqrt(20 + Math.pow(avgLp - 50, 2)));
+        double dL50 = (avgLp - 50) * (avgLp - 50);
+        double SL = 1 + ((0.015 * dL50) / Math.sqrt(20 + dL50));
         double SC = 1 + 0.045 * avgCp;
         double SH = 1 + 0.015 * avgCp * T;
 
-        double deltaTheta = Math.toRadians(30) * Math.exp(-Math.pow((avgHp - Math.toRadians(275)) / Math.toRadians(25), 2));
-        double RC = 2 * Math.sqrt(Math.pow(avgCp, 7.0) / (Math.pow(avgCp, 7.0) + Math.pow(25.0, 7.0)));
+        double hue = (avgHp - Math.toRadians(275)) / Math.toRadians(25);
+        double deltaTheta = Math.toRadians(30) * Math.exp(-hue * hue);
+        double avgCp7 = pow7(avgCp);
+        double RC = 2 * Math.sqrt(avgCp7 / (avgCp7 + POW_25_7));
         double RT = -RC * Math.sin(2 * deltaTheta);
 
-        double deltaE = Math.sqrt(
-                Math.pow(deltaLp / SL, 2) +
-                Math.pow(deltaCp / SC, 2) +
-                Math.pow(deltaHpDeg / SH, 2) +
-                RT * (deltaCp / SC) * (deltaHpDeg / SH)
-        );
+        double l = deltaLp / SL;
+        double c = deltaCp / SC;
+        double h = deltaHpDeg / SH;
+        double deltaE = Math.sqrt(l * l + c * c + h * h + RT * c * h);
 
         return deltaE;
     }
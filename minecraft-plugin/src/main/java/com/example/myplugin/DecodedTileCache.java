@@ -0,0 +1,347 @@
+package com.example.voxelearth;
+
+import org.bukkit.Material;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The decoded, color-matched form of a tile, so a tile seen before can be
+ * placed again without RLE decoding or color matching.
+ *
+ * Layout (little-endian): "VXDC", u32 version, seven u64 key values (the
+ * bits of the f64 scale X/Y/Z and translation X/Y/Z the tile was decoded
+ * with, then the {@link AtlasSnapshot#fingerprint} of the atlas its colors
+ * were matched with), u32 recordCount, u64 words of a bitmap of the
+ * records the cache holds, u16 materialCount with that many
+ * u16-length-prefixed material names, then u32 offsets[recordCount + 1]
+ * into the data that follows. Each non-empty record holds a u16 fill count, the fills (six i32 bounds and a
+ * u16 material each), an i32 base X/Y/Z, a u32 voxel count and the voxels:
+ * u8 y, z, x relative to the base plus a u16 material, in section order.
+ *
+ * Records line up with the VXCH chunk table, so a cached tile is still
+ * decoded region by region. A tile evicted before all its records were
+ * decoded is cached with just those; the others are decoded from the VXCH
+ * file as before. Coordinates are already translated and materials already
+ * matched; a cache only applies to the scale, translation and atlas stored
+ * in its key.
+ */
+class DecodedTileCache {
+
+    private static final int VERSION = 3;
+    private static final int KEY_VALUES = 7;
+    private static final int VOXEL_BYTES = 5;
+    private static final int FILL_BYTES = 6 * 4 + 2;
+
+    private final ByteBuffer buf;
+    private final BitSet cached;
+    private final Material[] materials;
+    private final int recordCount;
+    private final int offsetsPos;
+    private final int dataPos;
+
+    private DecodedTileCache(ByteBuffer buf, BitSet cached, Material[] materials, int recordCount, int offsetsPos) {
+        this.buf = buf;
+        this.cached = cached;
+        this.materials = materials;
+        this.recordCount = recordCount;
+        this.offsetsPos = offsetsPos;
+        this.dataPos = offsetsPos + (recordCount + 1) * 4;
+    }
+
+    /** Cache key for a tile placed with the given scale and translation and matched with the given atlas. */
+    static long[] key(double scaleX, double scaleY, double scaleZ, double[] translation, long atlasFingerprint) {
+        return new long[]{Double.doubleToLongBits(scaleX), Double.doubleToLongBits(scaleY),
+            Double.doubleToLongBits(scaleZ), Double.doubleToLongBits(translation[0]),
+            Double.doubleToLongBits(translation[1]), Double.doubleToLongBits(translation[2]), atlasFingerprint};
+    }
+
+    /**
+     * Reads a cache from a mapped buffer. Returns null if it is not a cache
+     * for {@code key} and {@code recordCount} records, or names a material
+     * this server doesn't have.
+     */
+    static DecodedTileCache read(ByteBuffer buf, long[] key, int recordCount) {
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        int headerBytes = 8 + KEY_VALUES * 8 + 4 + 2;
+        if (buf.limit() < headerBytes
+                || buf.get(0) != 'V' || buf.get(1) != 'X' || buf.get(2) != 'D' || buf.get(3) != 'C'
+                || buf.getInt(4) != VERSION) {
+            return null;
+        }
+        for (int i = 0; i < KEY_VALUES; i++) {
+            if (buf.getLong(8 + i * 8) != key[i]) return null;
+        }
+        int pos = 8 + KEY_VALUES * 8;
+        if (buf.getInt(pos) != recordCount) return null;
+        pos += 4;
+
+        long[] words = new long[bitmapWords(recordCount)];
+        if (pos + words.length * 8L + 2 > buf.limit()) return null;
+        for (int i = 0; i < words.length; i++, pos += 8) {
+            words[i] = buf.getLong(pos);
+        }
+        BitSet cached = BitSet.valueOf(words);
+        if (cached.length() > recordCount) return null;
+
+        int materialCount = buf.getShort(pos) & 0xFFFF;
+        pos += 2;
+        Material[] materials = new Material[materialCount];
+        for (int i = 0; i < materialCount; i++) {
+            if (pos + 2 > buf.limit()) return null;
+            int len = buf.getShort(pos) & 0xFFFF;
+            if (pos + 2 + len > buf.limit()) return null;
+            byte[] name = new byte[len];
+            ByteBuffer src = buf.duplicate();
+            src.position(pos + 2);
+            src.get(name);
+            materials[i] = Material.getMaterial(new String(name, StandardCharsets.UTF_8));
+            if (materials[i] == null) return null;
+            pos += 2 + len;
+        }
+
+        DecodedTileCache cache = new DecodedTileCache(buf, cached, materials, recordCount, pos);
+        if (cache.dataPos > buf.limit() || cache.dataPos + (long) cache.offset(recordCount) > buf.limit()) {
+            return null;
+        }
+        return cache;
+    }
+
+    /** Whether the cache holds a record; records it doesn't hold are decoded from the VXCH file. */
+    boolean contains(int rec) {
+        return cached.get(rec);
+    }
+
+    /** Number of records the cache holds. */
+    int cachedRecords() {
+        return cached.cardinality();
+    }
+
+    /** Adds the blocks and fills of one cached chunk record to the given collections. */
+    void decodeRecord(int rec, VoxelMap blocks, List<BlockFill> fills) {
+        int pos = dataPos + offset(rec);
+        if (pos == dataPos + offset(rec + 1)) return;
+
+        int fillCount = buf.getShort(pos) & 0xFFFF;
+        pos += 2;
+        for (int i = 0; i < fillCount; i++, pos += FILL_BYTES) {
+            fills.add(new BlockFill(buf.getInt(pos), buf.getInt(pos + 4), buf.getInt(pos + 8),
+                buf.getInt(pos + 12), buf.getInt(pos + 16), buf.getInt(pos + 20),
+                materials[buf.getShort(pos + 24) & 0xFFFF]));
+        }
+
+        int baseX = buf.getInt(pos);
+        int baseY = buf.getInt(pos + 4);
+        int baseZ = buf.getInt(pos + 8);
+        int voxelCount = buf.getInt(pos + 12);
+        pos += 16;
+        for (int i = 0; i < voxelCount; i++, pos += VOXEL_BYTES) {
+            int y = baseY + (buf.get(pos) & 0xFF);
+            int z = baseZ + (buf.get(pos + 1) & 0xFF);
+            int x = baseX + (buf.get(pos + 2) & 0xFF);
+            blocks.put(x, y, z, materials[buf.getShort(pos + 3) & 0xFFFF]);
+        }
+    }
+
+    private int offset(int rec) {
+        return buf.getInt(offsetsPos + rec * 4);
+    }
+
+    private static int bitmapWords(int recordCount) {
+        return (recordCount + 63) >>> 6;
+    }
+
+    /**
+     * Collects the decoded records of a tile as they come out of the
+     * decoder, and encodes the cache once every record has been seen, or
+     * with the records seen so far when the tile is evicted first.
+     */
+    static class Builder {
+        private final long[] key;
+        private final byte[][] records;
+        private final DecodedTileCache base;
+        private final Map<Material, Integer> materialIndex = new HashMap<>();
+        private int pending;
+        private int added;
+        private boolean done;
+
+        /** {@code pending} is the number of records that will be decoded. */
+        Builder(long[] key, int recordCount, int pending) {
+            this(key, recordCount, pending, null);
+        }
+
+        /**
+         * A builder that extends {@code base}, a partial cache of the same
+         * tile; its records are carried over into the cache this one encodes.
+         */
+        Builder(long[] key, int recordCount, int pending, DecodedTileCache base) {
+            this.key = key;
+            this.records = new byte[recordCount][];
+            this.pending = pending;
+            this.base = base;
+        }
+
+        /** Encodes what one record decoded to. */
+        synchronized void record(int rec, VoxelMap blocks, List<BlockFill> fills) {
+            if (done || records[rec] != null) return;
+
+            int n = blocks.size();
+            int[] coords = new int[n * 3];
+            int[] mats = new int[n];
+            int[] count = {0};
+            blocks.forEach((pos, material) -> {
+                int i = count[0]++;
+                coords[i * 3] = VoxelMap.x(pos);
+                coords[i * 3 + 1] = VoxelMap.y(pos);
+                coords[i * 3 + 2] = VoxelMap.z(pos);
+                mats[i] = materialIndex(material);
+            });
+            int baseX = Integer.MAX_VALUE, baseY = Integer.MAX_VALUE, baseZ = Integer.MAX_VALUE;
+            for (int i = 0; i < n; i++) {
+                baseX = Math.min(baseX, coords[i * 3]);
+                baseY = Math.min(baseY, coords[i * 3 + 1]);
+                baseZ = Math.min(baseZ, coords[i * 3 + 2]);
+            }
+
+            // Section order: y, then z, then x; the material index rides in the low bits
+            long[] order = new long[n];
+            for (int i = 0; i < n; i++) {
+                long dx = coords[i * 3] - (long) baseX;
+                long dy = coords[i * 3 + 1] - (long) baseY;
+                long dz = coords[i * 3 + 2] - (long) baseZ;
+                if (dx > 0xFF || dy > 0xFF || dz > 0xFF) {
+                    // Chunks never span this far; don't cache a tile we can't encode
+                    done = true;
+                    return;
+                }
+                order[i] = dy << 40 | dz << 32 | dx << 24 | mats[i];
+            }
+            Arrays.sort(order);
+
+            ByteBuffer out = ByteBuffer.allocate(2 + fills.size() * FILL_BYTES + 16 + n * VOXEL_BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+            out.putShort((short) fills.size());
+            for (BlockFill fill : fills) {
+                out.putInt(fill.minX).putInt(fill.minY).putInt(fill.minZ)
+                    .putInt(fill.maxX).putInt(fill.maxY).putInt(fill.maxZ)
+                    .putShort((short) materialIndex(fill.material));
+            }
+            out.putInt(n == 0 ? 0 : baseX).putInt(n == 0 ? 0 : baseY).putInt(n == 0 ? 0 : baseZ).putInt(n);
+            for (long v : order) {
+                out.put((byte) (v >>> 40)).put((byte) (v >>> 32)).put((byte) (v >>> 24)).putShort((short) v);
+            }
+            records[rec] = out.array();
+            pending--;
+            if (base == null || !base.contains(rec)) added++;
+        }
+
+        /**
+         * Returns the encoded cache once all records are in, exactly once;
+         * null before that, or if the tile can't be cached.
+         */
+        synchronized ByteBuffer finish() {
+            if (pending > 0) return null;
+            return encode();
+        }
+
+        /**
+         * Encodes the records seen so far, for a tile evicted before all of
+         * them were decoded, and stops collecting. Returns null if there is
+         * nothing the base cache doesn't already hold.
+         */
+        synchronized ByteBuffer finishPartial() {
+            if (added == 0) {
+                abandon();
+                return null;
+            }
+            return encode();
+        }
+
+        private ByteBuffer encode() {
+            if (done) return null;
+            if (base != null) {
+                for (int rec = base.cached.nextSetBit(0); rec >= 0; rec = base.cached.nextSetBit(rec + 1)) {
+                    if (records[rec] != null) continue;
+                    VoxelMap blocks = new VoxelMap();
+                    List<BlockFill> fills = new ArrayList<>();
+                    base.decodeRecord(rec, blocks, fills);
+                    record(rec, blocks, fills);
+                }
+                if (done) return null;
+            }
+            done = true;
+
+            Material[] materials = new Material[materialIndex.size()];
+            materialIndex.forEach((mat, index) -> materials[index] = mat);
+
+            ByteArrayOutputStream names = new ByteArrayOutputStream();
+            for (Material mat : materials) {
+                byte[] name = mat.name().getBytes(StandardCharsets.UTF_8);
+                names.write(name.length & 0xFF);
+                names.write(name.length >>> 8);
+                names.write(name, 0, name.length);
+            }
+
+            int dataBytes = 0;
+            for (byte[] record : records) {
+                if (record != null) dataBytes += record.length;
+            }
+            ByteBuffer out = ByteBuffer.allocate(8 + KEY_VALUES * 8 + 4 + bitmapWords(records.length) * 8 + 2 + names.size()
+                    + (records.length + 1) * 4 + dataBytes)
+                .order(ByteOrder.LITTLE_ENDIAN);
+            out.put(new byte[]{'V', 'X', 'D', 'C'}).putInt(VERSION);
+            for (long value : key) {
+                out.putLong(value);
+            }
+            out.putInt(records.length);
+            long[] words = new long[bitmapWords(records.length)];
+            for (int rec = 0; rec < records.length; rec++) {
+                if (records[rec] != null) words[rec >>> 6] |= 1L << rec;
+            }
+            for (long word : words) {
+                out.putLong(word);
+            }
+            out.putShort((short) materials.length).put(names.toByteArray());
+
+            int offset = 0;
+            for (byte[] record : records) {
+                out.putInt(offset);
+                if (record != null) offset += record.length;
+            }
+            out.putInt(offset);
+            for (byte[] record : records) {
+                if (record != null) out.put(record);
+            }
+            Arrays.fill(records, null);
+            out.flip();
+            return out;
+        }
+
+        /** Bytes of encoded records held until {@link #finish}. */
+        synchronized long footprintBytes() {
+            long bytes = (long) records.length * 8;
+            for (byte[] record : records) {
+                if (record != null) bytes += record.length + 16;
+            }
+            return bytes;
+        }
+
+        /** Gives up on caching the tile and frees the records collected so far. */
+        synchronized void abandon() {
+            done = true;
+            Arrays.fill(records, null);
+        }
+
+        private int materialIndex(Material mat) {
+            return materialIndex.computeIfAbsent(mat, m -> materialIndex.size());
+        }
+    }
+}
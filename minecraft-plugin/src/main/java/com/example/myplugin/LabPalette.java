@@ -0,0 +1,139 @@
+package com.example.voxelearth;
+
+import org.bukkit.Material;
+
+import java.awt.Color;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * The block atlas converted once to the coordinates of a
+ * {@link ColorDistance} (CIELAB unless the metric works in RGB), for color
+ * matching.
+ *
+ * Entry i is lab[3i..3i+2] and materials[i]. Matching a color converts it
+ * once and searches a {@link LabTree} over the table, measuring the
+ * distance only to entries that could be closest, without touching Color
+ * objects or converting atlas entries per lookup.
+ */
+final class LabPalette {
+
+    private final ColorDistance metric;
+    private final float[] lab;
+    private final Material[] materials;
+    private final LabTree tree;
+
+    LabPalette(List<MaterialColor> colors) {
+        this(colors, ColorDistance.CIEDE2000);
+    }
+
+    LabPalette(List<MaterialColor> colors, ColorDistance metric) {
+        this.metric = metric;
+        int n = colors.size();
+        lab = new float[n * 3];
+        materials = new Material[n];
+        for (int i = 0; i < n; i++) {
+            Color color = colors.get(i).getColor();
+            metric.coordinates(color.getRed(), color.getGreen(), color.getBlue(), lab, i * 3);
+            materials[i] = colors.get(i).getMaterial();
+        }
+        tree = new LabTree(lab, materials, metric);
+    }
+
+    ColorDistance metric() {
+        return metric;
+    }
+
+    int size() {
+        return materials.length;
+    }
+
+    /**
+     * Atlas material closest to an sRGB color by the palette's metric, or
+     * {@code fallback} if none is within {@code maxDistance}.
+     */
+    Material match(int r, int g, int b, double maxDistance, Material fallback) {
+        int index = matchIndex(r, g, b, maxDistance);
+        return index >= 0 ? materials[index] : fallback;
+    }
+
+    /** Index of the entry {@link #match} picks, or -1 if none is within {@code maxDistance}. */
+    int matchIndex(int r, int g, int b, double maxDistance) {
+        float[] query = new float[3];
+        metric.coordinates(r, g, b, query, 0);
+        double[] distances = new double[1];
+        int best = tree.nearest(query, distances, false);
+        return best >= 0 && distances[0] <= maxDistance ? best : -1;
+    }
+
+    /**
+     * {@link #matchIndex} for the first {@code count} colors of {@code rgb},
+     * packed as 0xRRGGBB, into {@code out}. Colors are matched in an order
+     * that keeps similar ones together, each search starting from the entry
+     * the previous color matched, which prunes most of the tree up front.
+     */
+    void matchAll(int[] rgb, int count, double maxDistance, int[] out) {
+        long[] order = new long[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = (long) mortonKey(rgb[i]) << 32 | i;
+        }
+        Arrays.sort(order);
+
+        float[] query = new float[3];
+        double[] distances = new double[1];
+        int hint = -1;
+        for (long key : order) {
+            int i = (int) key;
+            metric.coordinates(rgb[i] >>> 16 & 0xFF, rgb[i] >>> 8 & 0xFF, rgb[i] & 0xFF, query, 0);
+            int best = tree.nearest(query, distances, false, hint);
+            out[i] = best >= 0 && distances[0] <= maxDistance ? best : -1;
+            hint = best;
+        }
+    }
+
+    /**
+     * Index of the entry closest to an sRGB color, or -1 if the palette is
+     * empty. distances[0] gets its distance and distances[1] that of the
+     * closest entry with another material, as atlas entries can share one.
+     * {@code hint} is as for {@link LabTree#nearest(float[], double[], boolean, int)}.
+     */
+    int nearest(int r, int g, int b, double[] distances, int hint) {
+        float[] query = new float[3];
+        metric.coordinates(r, g, b, query, 0);
+        return tree.nearest(query, distances, true, hint);
+    }
+
+    // Bits of r, g and b interleaved, so colors close in RGB mostly sort close together
+    private static int mortonKey(int rgb) {
+        int key = 0;
+        for (int bit = 7; bit >= 0; bit--) {
+            key = key << 3 | (rgb >>> 16 + bit & 1) << 2 | (rgb >>> 8 + bit & 1) << 1 | (rgb >>> bit & 1);
+        }
+        return key;
+    }
+
+    Material material(int index) {
+        return materials[index];
+    }
+
+    /** Checksum of the metric and entries, to tell whether a table derived from an atlas is stale. */
+    long fingerprint() {
+        CRC32 crc = new CRC32();
+        crc.update(metric.name().getBytes(StandardCharsets.UTF_8));
+        for (int i = 0; i < materials.length; i++) {
+            int p = i * 3;
+            for (int k = 0; k < 3; k++) {
+                int bits = Float.floatToIntBits(lab[p + k]);
+                crc.update(bits);
+                crc.update(bits >>> 8);
+                crc.update(bits >>> 16);
+                crc.update(bits >>> 24);
+            }
+            // A block this server doesn't know can leave an entry without a material
+            crc.update(String.valueOf(materials[i]).getBytes(StandardCharsets.UTF_8));
+        }
+        return crc.getValue() << 16 | materials.length;
+    }
+}
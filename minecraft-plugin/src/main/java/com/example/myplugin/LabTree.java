@@ -0,0 +1,281 @@
+package com.example.voxelearth;
+
+import org.bukkit.Material;
+
+import java.util.Arrays;
+
+/**
+ * k-d tree over the entries of a {@link LabPalette}, giving the same nearest
+ * entry as scanning them all. Described here for CIEDE2000; the other
+ * {@link ColorDistance} metrics get simpler bounds of the same kind, see
+ * {@link #lowerBound}.
+ *
+ * Each node keeps the Lab box and the largest chroma of its entries. A node
+ * is skipped when a lower bound on CIEDE2000 to anything in its box is
+ * already worse than the best entry found. The bound comes from the terms
+ * of the formula: SL, SC and SH only grow with the pair's lightness and
+ * chroma, which the box limits, a' only stretches a, and the rotation term
+ * takes at most RC * sin 60 / 2 of the chroma and hue part. That is a
+ * scaled CIE76 box distance:
+ *
+ *   dE00^2 >= dL^2 / SLmax^2 + (1 - 0.433 RCmax) * dab^2 / SCmax^2
+ *
+ * Entries in a leaf get a tighter bound first, from the pair's exact a', C',
+ * SL and SC, and the largest SH and rotation those allow; it needs no
+ * trigonometry, so most entries are rejected at a fraction of the cost of
+ * CIEDE2000. Leaf entries are copied in tree order into separate L, a, b and
+ * chroma arrays, so a leaf is read from contiguous memory.
+ *
+ * Ties go to the lower index, as in the scan.
+ */
+final class LabTree {
+
+    private static final int LEAF_SIZE = 8;
+    // Rounding slack when comparing a bound against an exact distance
+    private static final double SLACK = 1e-9;
+    private static final double POW_25_7 = 6103515625.0;
+    // Largest value of CIEDE2000's hue weighting T (1.5725 at about 234 degrees)
+    private static final double T_MAX = 1.58;
+    private static final double SIN_60 = 0.8660254037844387;
+
+    private final float[] lab;
+    private final Material[] materials;
+    private final ColorDistance metric;
+    // Entry indices, grouped so each node covers order[start..end)
+    private final int[] order;
+    // Entry order[i]'s L, a, b and chroma at [i]
+    private final float[] sortedL, sortedA, sortedB, sortedC;
+
+    private final int[] start, end, left, right;
+    private final float[] minL, maxL, minA, maxA, minB, maxB, maxC;
+    private int nodes;
+
+    LabTree(float[] lab, Material[] materials, ColorDistance metric) {
+        this.lab = lab;
+        this.materials = materials;
+        this.metric = metric;
+        int n = materials.length;
+        order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        int capacity = Math.max(1, 2 * n);
+        start = new int[capacity];
+        end = new int[capacity];
+        left = new int[capacity];
+        right = new int[capacity];
+        minL = new float[capacity];
+        maxL = new float[capacity];
+        minA = new float[capacity];
+        maxA = new float[capacity];
+        minB = new float[capacity];
+        maxB = new float[capacity];
+        maxC = new float[capacity];
+        if (n > 0) build(0, n, new long[n]);
+
+        sortedL = new float[n];
+        sortedA = new float[n];
+        sortedB = new float[n];
+        sortedC = new float[n];
+        for (int i = 0; i < n; i++) {
+            int p = order[i] * 3;
+            sortedL[i] = lab[p];
+            sortedA[i] = lab[p + 1];
+            sortedB[i] = lab[p + 2];
+            sortedC[i] = (float) Math.sqrt(lab[p + 1] * lab[p + 1] + lab[p + 2] * lab[p + 2]);
+        }
+    }
+
+    /**
+     * Index of the entry closest to {@code query} (L, a, b), or -1 if there
+     * are none. distances[0] gets its CIEDE2000; with {@code runnerUp},
+     * distances[1] gets that of the closest entry with another material,
+     * otherwise it is left alone.
+     */
+    int nearest(float[] query, double[] distances, boolean runnerUp) {
+        return nearest(query, distances, runnerUp, -1);
+    }
+
+    /**
+     * {@link #nearest(float[], double[], boolean)} starting from entry
+     * {@code hint}, typically the answer for a similar color: its distance
+     * bounds the search from the start, so more of the tree is skipped.
+     * The result doesn't depend on the hint; -1 for none.
+     */
+    int nearest(float[] query, double[] distances, boolean runnerUp, int hint) {
+        Search s = new Search(query, runnerUp);
+        if (hint >= 0) s.offer(hint, lab, materials, metric);
+        if (nodes > 0) search(0, s);
+        distances[0] = s.first;
+        if (runnerUp) distances[1] = s.second;
+        return s.best;
+    }
+
+    private int build(int from, int to, long[] keys) {
+        int node = nodes++;
+        start[node] = from;
+        end[node] = to;
+        left[node] = right[node] = -1;
+
+        float lo0 = Float.MAX_VALUE, hi0 = -Float.MAX_VALUE, lo1 = lo0, hi1 = hi0, lo2 = lo0, hi2 = hi0, c = 0;
+        for (int i = from; i < to; i++) {
+            int p = order[i] * 3;
+            lo0 = Math.min(lo0, lab[p]);
+            hi0 = Math.max(hi0, lab[p]);
+            lo1 = Math.min(lo1, lab[p + 1]);
+            hi1 = Math.max(hi1, lab[p + 1]);
+            lo2 = Math.min(lo2, lab[p + 2]);
+            hi2 = Math.max(hi2, lab[p + 2]);
+            c = (float) Math.max(c, Math.sqrt(lab[p + 1] * lab[p + 1] + lab[p + 2] * lab[p + 2]));
+        }
+        minL[node] = lo0;
+        maxL[node] = hi0;
+        minA[node] = lo1;
+        maxA[node] = hi1;
+        minB[node] = lo2;
+        maxB[node] = hi2;
+        // Rounded up so the float never undercuts an entry's chroma
+        maxC[node] = Math.nextUp(c);
+        if (to - from <= LEAF_SIZE) return node;
+
+        // Split at the median of the widest axis
+        float w0 = hi0 - lo0, w1 = hi1 - lo1, w2 = hi2 - lo2;
+        int axis = w0 >= w1 && w0 >= w2 ? 0 : w1 >= w2 ? 1 : 2;
+        for (int i = from; i < to; i++) {
+            int bits = Float.floatToIntBits(lab[order[i] * 3 + axis]);
+            // Flipped so negative floats order correctly as ints
+            bits ^= (bits >> 31) & 0x7FFFFFFF;
+            keys[i] = (long) bits << 32 | order[i];
+        }
+        Arrays.sort(keys, from, to);
+        for (int i = from; i < to; i++) {
+            order[i] = (int) keys[i];
+        }
+        int mid = (from + to) >>> 1;
+        left[node] = build(from, mid, keys);
+        right[node] = build(mid, to, keys);
+        return node;
+    }
+
+    private void search(int node, Search s) {
+        if (left[node] < 0) {
+            for (int i = start[node]; i < end[node]; i++) {
+                if (metric != ColorDistance.CIEDE2000 || entryBound(i, s) <= s.bound() + SLACK) {
+                    s.offer(order[i], lab, materials, metric);
+                }
+            }
+            return;
+        }
+        int near = left[node], far = right[node];
+        double nearBound = lowerBound(near, s), farBound = lowerBound(far, s);
+        if (farBound < nearBound) {
+            int t = near;
+            near = far;
+            far = t;
+            double b = nearBound;
+            nearBound = farBound;
+            farBound = b;
+        }
+        if (nearBound <= s.bound() + SLACK) search(near, s);
+        if (farBound <= s.bound() + SLACK) search(far, s);
+    }
+
+    // Lower bound on the distance from the query to any entry in the node's box
+    private double lowerBound(int node, Search s) {
+        double dL = gap(s.l, minL[node], maxL[node]);
+        double da = gap(s.a, minA[node], maxA[node]);
+        double db = gap(s.b, minB[node], maxB[node]);
+        switch (metric) {
+            case CIE76:
+                return Math.sqrt(dL * dL + da * da + db * db);
+            case CIE94: {
+                // dC^2 + dH^2 = da^2 + db^2, and SH <= SC
+                double sc = 1 + 0.045 * s.c;
+                return Math.sqrt(dL * dL + (da * da + db * db) / (sc * sc));
+            }
+            case REDMEAN:
+                // Coordinates are R, G, B; the red and blue weights are at least 2
+                return Math.sqrt(2 * dL * dL + 4 * da * da + 2 * db * db);
+            default:
+                break;
+        }
+
+        // SL grows with the distance of the mean lightness from 50
+        double avgL = Math.abs((s.l + minL[node]) / 2 - 50) > Math.abs((s.l + maxL[node]) / 2 - 50)
+            ? (s.l + minL[node]) / 2 : (s.l + maxL[node]) / 2;
+        double dL50 = (avgL - 50) * (avgL - 50);
+        double sl = 1 + 0.015 * dL50 / Math.sqrt(20 + dL50);
+
+        // C' <= 1.5 C, as G <= 0.5
+        double avgCp = 0.75 * (s.c + maxC[node]);
+        double sc = 1 + 0.045 * avgCp;
+        double c7 = avgCp * avgCp * avgCp * avgCp * avgCp * avgCp * avgCp;
+        double rc = 2 * Math.sqrt(c7 / (c7 + POW_25_7));
+        double k = 1 - 0.433 * rc;
+
+        return Math.sqrt(dL * dL / (sl * sl) + k * (da * da + db * db) / (sc * sc));
+    }
+
+    // Lower bound on CIEDE2000 from the query to entry order[i]; the other metrics are cheap enough to run directly
+    private double entryBound(int i, Search s) {
+        double l2 = sortedL[i], a2 = sortedA[i], b2 = sortedB[i];
+        double avgC = (s.c + sortedC[i]) / 2;
+        double avgC7 = avgC * avgC * avgC * avgC * avgC * avgC * avgC;
+        double g = 0.5 * (1 - Math.sqrt(avgC7 / (avgC7 + POW_25_7)));
+        double a1p = (1 + g) * s.a, a2p = (1 + g) * a2;
+        double c1p = Math.sqrt(a1p * a1p + s.b * s.b), c2p = Math.sqrt(a2p * a2p + b2 * b2);
+        double avgCp = (c1p + c2p) / 2;
+
+        double avgL = (s.l + l2) / 2;
+        double dL50 = (avgL - 50) * (avgL - 50);
+        double l = (l2 - s.l) / (1 + 0.015 * dL50 / Math.sqrt(20 + dL50));
+
+        double deltaCp = c2p - c1p;
+        double c = Math.abs(deltaCp) / (1 + 0.045 * avgCp);
+        // dH'^2 = da'^2 + db^2 - dC'^2, over the largest SH
+        double deltaH2 = (a2p - a1p) * (a2p - a1p) + (b2 - s.b) * (b2 - s.b) - deltaCp * deltaCp;
+        double h = Math.sqrt(Math.max(0, deltaH2)) / (1 + 0.015 * avgCp * T_MAX);
+
+        double avgCp7 = avgCp * avgCp * avgCp * avgCp * avgCp * avgCp * avgCp;
+        double rt = 2 * Math.sqrt(avgCp7 / (avgCp7 + POW_25_7)) * SIN_60;
+        // c^2 + h^2 - rt*c*h only grows with h past rt*c/2
+        h = Math.max(h, rt * c / 2);
+        return Math.sqrt(Math.max(0, l * l + c * c + h * h - rt * c * h));
+    }
+
+    private static double gap(double v, float lo, float hi) {
+        return v < lo ? lo - v : v > hi ? v - hi : 0;
+    }
+
+    private static final class Search {
+        final double l, a, b, c;
+        final boolean runnerUp;
+        int best = -1;
+        double first = Double.MAX_VALUE, second = Double.MAX_VALUE;
+
+        Search(float[] query, boolean runnerUp) {
+            l = query[0];
+            a = query[1];
+            b = query[2];
+            c = Math.sqrt(a * a + b * b);
+            this.runnerUp = runnerUp;
+        }
+
+        // Nodes whose bound is above this can't change the result
+        double bound() {
+            return runnerUp ? second : first;
+        }
+
+        void offer(int i, float[] lab, Material[] materials, ColorDistance metric) {
+            int p = i * 3;
+            double deltaE = metric.distance(l, a, b, lab[p], lab[p + 1], lab[p + 2]);
+            if (deltaE < first || deltaE == first && i < best) {
+                if (best >= 0 && materials[best] != materials[i]) second = first;
+                first = deltaE;
+                best = i;
+            } else if (deltaE < second && materials[i] != materials[best]) {
+                second = deltaE;
+            }
+        }
+    }
+}
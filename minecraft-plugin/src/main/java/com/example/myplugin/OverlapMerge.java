@@ -0,0 +1,148 @@
+package com.example.voxelearth;
+
+import org.bukkit.Material;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The part of a tile region that should actually be placed once overlapping
+ * tiles are taken into account.
+ *
+ * Neighbouring tiles, and tiles of adjacent LODs, often decode to the same
+ * columns. Instead of letting whichever tile is placed last win, every column
+ * two tiles share has one owner, decided from their footprints alone (see
+ * {@link #owned}): a finer tile owns its whole footprint over a coarser one,
+ * and tiles of the same size split their overlap halfway between their
+ * centres. Footprints are fixed by the VXCH header, so the owner doesn't
+ * depend on what either tile has decoded or released.
+ *
+ * A region drops its blocks in columns owned by a tile already placed, and a
+ * tile placed for the first time clears what earlier tiles put in columns it
+ * owns. Either way the final blocks don't depend on load order.
+ *
+ * Only tiles already claimed for placement with the same Y offset count: one
+ * still unclaimed may yet be dropped, or placed somewhere else.
+ */
+final class OverlapMerge {
+
+    final VoxelSource blocks;
+    final List<BlockFill> fills;
+    /** Air over blocks of other tiles in columns this one owns, to place before the rest. */
+    final List<BlockFill> cleared;
+
+    private OverlapMerge(VoxelSource blocks, List<BlockFill> fills, List<BlockFill> cleared) {
+        this.blocks = blocks;
+        this.fills = fills;
+        this.cleared = cleared;
+    }
+
+    /**
+     * Resolves a region of {@code record} that is about to be placed with
+     * {@code yOffset} against {@code nearby}, the tiles its footprint overlaps.
+     * {@code first} is set for the tile's first placement, the only one that
+     * clears the columns it owns. Returns the region unchanged if no placed
+     * tile owns any of its columns.
+     */
+    static OverlapMerge resolve(TileRecord record, Collection<TileRecord> nearby,
+                                VoxelSource blocks, List<BlockFill> fills, int yOffset, boolean first) {
+        List<TileRecord> placed = new ArrayList<>();
+        List<int[]> taken = new ArrayList<>();
+        for (TileRecord other : nearby) {
+            // Unclaimed, or placed with another offset, it doesn't cover these columns
+            if (other == record || !other.isPlacedWith(yOffset)) continue;
+            placed.add(other);
+            int[] columns = owned(other, record);
+            if (columns != null) taken.add(columns);
+        }
+
+        List<BlockFill> cleared = new ArrayList<>();
+        if (first) {
+            for (TileRecord other : placed) {
+                int[] columns = owned(record, other);
+                int[] bounds = other.bounds();
+                if (columns == null || bounds == null) continue;
+                // Tiles owning part of ours keep their blocks there
+                for (int[] part : subtract(columns, taken)) {
+                    cleared.add(new BlockFill(part[0], bounds[1], part[1], part[2], bounds[4], part[3], Material.AIR));
+                }
+            }
+        }
+        if (taken.isEmpty()) return new OverlapMerge(blocks, fills, cleared);
+
+        VoxelMap kept = new VoxelMap();
+        blocks.forEach((pos, material) -> {
+            if (!inAny(taken, VoxelMap.x(pos), VoxelMap.z(pos))) {
+                kept.put(pos, material);
+            }
+        });
+        List<BlockFill> keptFills = new ArrayList<>();
+        for (BlockFill fill : fills) {
+            for (int[] part : subtract(new int[]{fill.minX, fill.minZ, fill.maxX, fill.maxZ}, taken)) {
+                keptFills.add(new BlockFill(part[0], fill.minY, part[1], part[2], fill.maxY, part[3], fill.material));
+            }
+        }
+        return new OverlapMerge(kept, keptFills, cleared);
+    }
+
+    /**
+     * Columns {minX, minZ, maxX, maxZ} of {@code other}'s footprint that
+     * {@code owner} owns, or null if none. The smaller footprint owns all of
+     * the overlap; of two the same size, each owns the half of the overlap on
+     * its own side, split across the axis their centres differ most on, and
+     * the smaller id owns all of it when they coincide.
+     */
+    static int[] owned(TileRecord owner, TileRecord other) {
+        int[] a = owner.footprint(), b = other.footprint();
+        if (a == null || b == null) return null;
+        int[] overlap = {Math.max(a[0], b[0]), Math.max(a[1], b[1]), Math.min(a[2], b[2]), Math.min(a[3], b[3])};
+        if (overlap[0] > overlap[2] || overlap[1] > overlap[3]) return null;
+
+        long area = owner.footprintArea(), otherArea = other.footprintArea();
+        if (area != otherArea) return area < otherArea ? overlap : null;
+
+        // Centres, doubled to stay integral
+        int dx = (a[0] + a[2]) - (b[0] + b[2]);
+        int dz = (a[1] + a[3]) - (b[1] + b[3]);
+        if (dx == 0 && dz == 0) return owner.id.compareTo(other.id) < 0 ? overlap : null;
+        int axis = Math.abs(dx) >= Math.abs(dz) ? 0 : 1;
+        int mid = Math.floorDiv(overlap[axis] + overlap[axis + 2], 2);
+        if ((axis == 0 ? dx : dz) < 0) {
+            overlap[axis + 2] = mid;
+        } else {
+            overlap[axis] = mid + 1;
+        }
+        return overlap[axis] <= overlap[axis + 2] ? overlap : null;
+    }
+
+    static boolean inAny(List<int[]> columns, int x, int z) {
+        for (int[] c : columns) {
+            if (x >= c[0] && x <= c[2] && z >= c[1] && z <= c[3]) return true;
+        }
+        return false;
+    }
+
+    // Parts of {minX, minZ, maxX, maxZ} outside every cut, as disjoint rectangles
+    private static List<int[]> subtract(int[] rect, List<int[]> cuts) {
+        List<int[]> parts = Collections.singletonList(rect);
+        for (int[] c : cuts) {
+            List<int[]> next = new ArrayList<>();
+            for (int[] p : parts) {
+                if (c[0] > p[2] || c[2] < p[0] || c[1] > p[3] || c[3] < p[1]) {
+                    next.add(p);
+                    continue;
+                }
+                // The strips of p west and east of the cut, then north and south of it
+                if (p[0] < c[0]) next.add(new int[]{p[0], p[1], c[0] - 1, p[3]});
+                if (p[2] > c[2]) next.add(new int[]{c[2] + 1, p[1], p[2], p[3]});
+                int minX = Math.max(p[0], c[0]), maxX = Math.min(p[2], c[2]);
+                if (p[1] < c[1]) next.add(new int[]{minX, p[1], maxX, c[1] - 1});
+                if (p[3] > c[3]) next.add(new int[]{minX, c[3] + 1, maxX, p[3]});
+            }
+            parts = next;
+        }
+        return parts;
+    }
+}
@@ -32,6 +32,14 @@ public class PlayerMovementListener implements Listener {
      */
     private final Map<Player, Location> lastLoadedLocations = new HashMap<>();
 
+    /**
+     * Tiles are decoded lazily around players; re-check once they have
+     * moved a chunk's width since the last check.
+     */
+    private static final double DECODE_THRESHOLD = 16.0;
+
+    private final Map<Player, Location> lastDecodedLocations = new HashMap<>();
+
     public PlayerMovementListener(VoxelEarth plugin) {
         this.plugin = plugin;
         plugin.getLogger().info("PlayerMovementListener has been created");
@@ -62,6 +70,14 @@ public class PlayerMovementListener implements Listener {
 
         VoxelChunkGenerator generator = plugin.getVoxelChunkGenerator();
 
+        // Decode the parts of already placed tiles that are now in range
+        Location lastDecoded = lastDecodedLocations.get(player);
+        if (lastDecoded == null || lastDecoded.getWorld() != to.getWorld()
+                || lastDecoded.distance(to) >= DECODE_THRESHOLD) {
+            lastDecodedLocations.put(player, to.clone());
+            generator.decodeAround(to.getWorld(), to.getBlockX(), to.getBlockZ());
+        }
+
         // 1) Compute absolute tile coords from player's position
         double x = to.getX();
         double z = to.getZ();
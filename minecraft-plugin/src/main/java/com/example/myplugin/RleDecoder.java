@@ -0,0 +1,68 @@
+package com.example.voxelearth;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Decoder for the PackBits-style RLE used by VXCH chunk payloads
+ * (see compress_chunk_data in cuda_voxelizer/src/util_io.cpp):
+ * a header byte h in [0, 127] is followed by h + 1 literal bytes,
+ * a header h in [-128, -1] is followed by one byte repeated 1 - h times.
+ *
+ * Instances are thread-confined and decode into a buffer that is reused
+ * across calls, so steady-state decoding allocates nothing. Use
+ * {@link #get()} to obtain the current thread's decoder.
+ */
+final class RleDecoder {
+
+    // Bitmask plus one u16 color per cell for a fully occupied 32^3 chunk
+    private static final int DEFAULT_CAPACITY = 32 * 32 * 32 / 8 + 32 * 32 * 32 * 2;
+
+    private static final ThreadLocal<RleDecoder> LOCAL = ThreadLocal.withInitial(RleDecoder::new);
+
+    private byte[] out = new byte[DEFAULT_CAPACITY];
+
+    static RleDecoder get() {
+        return LOCAL.get();
+    }
+
+    /**
+     * Decodes {@code src} from its current position to its limit into
+     * {@link #buffer()}. Stops once {@code uncompressedSize} bytes have
+     * been produced; the source position is left after the last packet read.
+     *
+     * @return the number of bytes written, which is less than
+     *         {@code uncompressedSize} if the source was truncated
+     */
+    int decode(ByteBuffer src, int uncompressedSize) {
+        if (out.length < uncompressedSize) {
+            out = new byte[uncompressedSize];
+        }
+        byte[] dst = out;
+        int n = 0;
+
+        while (src.hasRemaining() && n < uncompressedSize) {
+            int header = src.get();
+
+            if (header >= 0) { // Literal run
+                int len = header + 1;
+                if (len > src.remaining()) break;
+                if (len > uncompressedSize - n) len = uncompressedSize - n;
+                src.get(dst, n, len);
+                n += len;
+            } else { // RLE run
+                if (!src.hasRemaining()) break;
+                int runLength = Math.min(1 - header, uncompressedSize - n);
+                byte val = src.get();
+                Arrays.fill(dst, n, n + runLength, val);
+                n += runLength;
+            }
+        }
+        return n;
+    }
+
+    /** Output of the last {@link #decode} call; only valid until the next one. */
+    byte[] buffer() {
+        return out;
+    }
+}
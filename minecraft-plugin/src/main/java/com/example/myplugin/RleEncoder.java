@@ -0,0 +1,40 @@
+package com.example.voxelearth;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Java port of compress_chunk_data from cuda_voxelizer/src/util_io.cpp,
+ * producing the PackBits-style RLE that {@link RleDecoder} reads: runs of
+ * three or more equal bytes become a run packet, everything else literals.
+ */
+final class RleEncoder {
+
+    private RleEncoder() {
+    }
+
+    static byte[] encode(byte[] in, int length) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length / 2 + 16);
+        int i = 0;
+        while (i < length) {
+            if (i <= length - 3 && in[i] == in[i + 1] && in[i] == in[i + 2]) {
+                int runLength = 3;
+                while (i + runLength < length && in[i + runLength] == in[i] && runLength < 128) {
+                    runLength++;
+                }
+                out.write(1 - runLength);
+                out.write(in[i]);
+                i += runLength;
+            } else {
+                int literalStart = i++;
+                while (i < length) {
+                    if (i <= length - 3 && in[i] == in[i + 1] && in[i] == in[i + 2]) break;
+                    if (i - literalStart >= 128) break;
+                    i++;
+                }
+                out.write(i - literalStart - 1);
+                out.write(in, literalStart, i - literalStart);
+            }
+        }
+        return out.toByteArray();
+    }
+}
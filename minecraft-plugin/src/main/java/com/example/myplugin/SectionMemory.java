@@ -0,0 +1,119 @@
+package com.example.voxelearth;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Memory for the bit-packed arrays of {@link SectionStore} sections: plain
+ * heap arrays, or off the heap when the server runs with
+ * -Dvoxelearth.offHeap=true, so decoded tiles don't add to GC work.
+ *
+ * Off-heap blocks are carved from 1 MB direct buffers. A direct buffer is
+ * only freed when the GC gets around to it, so instead of allocating one per
+ * section, blocks are handed back here when a section is resized or its tile
+ * evicted, and reused by the next tile decoded. A section array is 512 bytes
+ * to 8 KB, so there is one free list per width. If direct memory runs out
+ * (-XX:MaxDirectMemorySize), sections fall back to the heap.
+ *
+ * Blocks dropped without {@link #free} are only reclaimed with their whole slab.
+ */
+final class SectionMemory {
+
+    static final boolean OFF_HEAP = Boolean.getBoolean("voxelearth.offHeap");
+
+    private static final int SLAB_BYTES = 1 << 20;
+    // Section arrays are 64 << n longs for n = 0..4 (1 to 16 bits per cell)
+    private static final int MIN_LONGS = 64;
+    private static final int SIZE_CLASSES = 5;
+    // After direct memory runs out, new slabs aren't tried again for this long
+    private static final long RETRY_MS = 30_000;
+
+    private static final ArrayDeque<LongBuffer>[] free = newFreeLists();
+    private static ByteBuffer slab;
+    // When direct memory last ran out; allocateDirect is slow to fail, so it isn't asked every time
+    private static long exhaustedAt;
+    private static long reservedBytes;
+    private static long usedBytes;
+
+    private SectionMemory() {
+    }
+
+    /** A zeroed array of {@code longs} longs, a power of two from 64 to 1024. */
+    static LongBuffer allocate(int longs) {
+        if (!OFF_HEAP) return LongBuffer.allocate(longs);
+        synchronized (SectionMemory.class) {
+            LongBuffer block = free[sizeClass(longs)].poll();
+            if (block == null) block = carve(longs);
+            if (block == null) return LongBuffer.allocate(longs);
+            usedBytes += (long) longs * Long.BYTES;
+            return block;
+        }
+    }
+
+    /** Hands an array from {@link #allocate} back; heap arrays are left to the GC. */
+    static void free(LongBuffer block) {
+        if (!block.isDirect()) return;
+        // Zeroed here so allocate() returns blocks ready to use, like fresh slab memory
+        for (int i = 0; i < block.capacity(); i++) {
+            block.put(i, 0L);
+        }
+        synchronized (SectionMemory.class) {
+            free[sizeClass(block.capacity())].push(block);
+            usedBytes -= (long) block.capacity() * Long.BYTES;
+        }
+    }
+
+    /** One-line summary of off-heap use, for /tilecache. */
+    static synchronized String stats() {
+        if (!OFF_HEAP) return "off-heap disabled";
+        return String.format("off-heap %.1f MB used of %.1f MB reserved",
+            usedBytes / 1048576.0, reservedBytes / 1048576.0);
+    }
+
+    static synchronized long usedBytes() {
+        return usedBytes;
+    }
+
+    // Called with the class lock held; null if direct memory is exhausted
+    private static LongBuffer carve(int longs) {
+        int bytes = longs * Long.BYTES;
+        if (slab == null || slab.remaining() < bytes) {
+            if (exhaustedAt != 0 && System.currentTimeMillis() - exhaustedAt < RETRY_MS) return null;
+            try {
+                slab = ByteBuffer.allocateDirect(SLAB_BYTES).order(ByteOrder.nativeOrder());
+                exhaustedAt = 0;
+            } catch (OutOfMemoryError e) {
+                if (exhaustedAt == 0) {
+                    System.out.println("[WARN] Direct memory exhausted, keeping new sections on the heap");
+                }
+                exhaustedAt = System.currentTimeMillis();
+                slab = null;
+                return null;
+            }
+            reservedBytes += SLAB_BYTES;
+        }
+        ByteBuffer block = slab.slice().order(ByteOrder.nativeOrder());
+        block.limit(bytes);
+        slab.position(slab.position() + bytes);
+        return block.asLongBuffer();
+    }
+
+    private static int sizeClass(int longs) {
+        int n = Integer.numberOfTrailingZeros(longs / MIN_LONGS);
+        if (longs != MIN_LONGS << n || n >= SIZE_CLASSES) {
+            throw new IllegalArgumentException("Not a section array size: " + longs);
+        }
+        return n;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArrayDeque<LongBuffer>[] newFreeLists() {
+        ArrayDeque<LongBuffer>[] lists = new ArrayDeque[SIZE_CLASSES];
+        for (int i = 0; i < SIZE_CLASSES; i++) {
+            lists[i] = new ArrayDeque<>();
+        }
+        return lists;
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.voxelearth;
+
+import org.bukkit.Material;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The decoded voxels of a tile, kept per 16x16x16 Minecraft section the
+ * way vanilla's paletted containers do: each section has its own small
+ * material palette and a bit-packed array of 4096 palette indices, 1 to
+ * 16 bits wide depending on how many materials the section uses.
+ *
+ * A surface section with a handful of materials costs 2 KB or less no
+ * matter how many of its cells are filled, where a hash table pays per
+ * voxel. Voxels are walked section by section, in section index order
+ * (y, z, x).
+ *
+ * The arrays live wherever {@link SectionMemory} puts them, on or off the
+ * heap; {@link #clear} hands them back.
+ *
+ * Not thread-safe; stores shared between threads are locked on the store itself.
+ */
+final class SectionStore implements VoxelSource {
+
+    private final Map<Long, Section> sections = new HashMap<>();
+    private int size;
+
+    /** Key of the section holding a block, packed like a block position. */
+    static long sectionKey(int x, int y, int z) {
+        return VoxelMap.pack(x >> 4, y >> 4, z >> 4);
+    }
+
+    int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    int sectionCount() {
+        return sections.size();
+    }
+
+    void put(int x, int y, int z, Material material) {
+        Section section = sections.computeIfAbsent(sectionKey(x, y, z), k -> new Section());
+        size += section.set(index(x, y, z), material);
+    }
+
+    void putAll(VoxelMap voxels) {
+        voxels.forEach((pos, material) -> put(VoxelMap.x(pos), VoxelMap.y(pos), VoxelMap.z(pos), material));
+    }
+
+    /** Removes every voxel and frees the section arrays. */
+    void clear() {
+        for (Section section : sections.values()) {
+            SectionMemory.free(section.data);
+        }
+        sections.clear();
+        size = 0;
+    }
+
+    Material get(int x, int y, int z) {
+        Section section = sections.get(sectionKey(x, y, z));
+        return section == null ? null : section.get(index(x, y, z));
+    }
+
+    Material get(long pos) {
+        return get(VoxelMap.x(pos), VoxelMap.y(pos), VoxelMap.z(pos));
+    }
+
+    @Override
+    public void forEach(VoxelMap.Visitor visitor) {
+        for (Map.Entry<Long, Section> entry : sections.entrySet()) {
+            long key = entry.getKey();
+            entry.getValue().forEach(VoxelMap.x(key) << 4, VoxelMap.y(key) << 4, VoxelMap.z(key) << 4, visitor);
+        }
+    }
+
+    /** Position of some voxel in the store; the store must not be empty. */
+    long anyPosition() {
+        for (Map.Entry<Long, Section> entry : sections.entrySet()) {
+            int index = entry.getValue().first();
+            if (index < 0) continue;
+            long key = entry.getKey();
+            return VoxelMap.pack((VoxelMap.x(key) << 4) | (index & 15),
+                (VoxelMap.y(key) << 4) | (index >>> 8),
+                (VoxelMap.z(key) << 4) | ((index >>> 4) & 15));
+        }
+        throw new IllegalStateException("SectionStore is empty");
+    }
+
+    /** Bytes held by the section arrays and palettes, on or off the heap. */
+    long footprintBytes() {
+        long bytes = 0;
+        for (Section section : sections.values()) {
+            bytes += (long) section.data.capacity() * Long.BYTES + (long) section.palette.length * 4 + 48;
+        }
+        return bytes;
+    }
+
+    // Vanilla section index: y, then z, then x
+    private static int index(int x, int y, int z) {
+        return (y & 15) << 8 | (z & 15) << 4 | (x & 15);
+    }
+
+    /** One 16^3 section: a local palette (0 is empty) and bit-packed indices. */
+    private static final class Section {
+        private static final int CELLS = 4096;
+
+        private Material[] palette = new Material[2];
+        private int paletteSize = 1;
+        private int bits = 1;
+        private LongBuffer data = SectionMemory.allocate(CELLS / 64);
+        private int count;
+        private int lastIndex;
+
+        Material get(int index) {
+            return palette[read(index)];
+        }
+
+        // Returns +1 if a cell was filled, 0 if an existing voxel was replaced
+        int set(int index, Material material) {
+            int value = paletteIndex(material);
+            int old = read(index);
+            write(index, value);
+            if (old == 0) {
+                count++;
+                return 1;
+            }
+            return 0;
+        }
+
+        void forEach(int baseX, int baseY, int baseZ, VoxelMap.Visitor visitor) {
+            if (count == 0) return;
+            int perLong = 64 / bits;
+            long mask = (1L << bits) - 1;
+            for (int w = 0; w < data.capacity(); w++) {
+                long word = data.get(w);
+                if (word == 0) continue;
+                for (int j = 0; j < perLong; j++, word >>>= bits) {
+                    int value = (int) (word & mask);
+                    if (value == 0) continue;
+                    int index = w * perLong + j;
+                    visitor.visit(VoxelMap.pack(baseX | (index & 15), baseY | (index >>> 8), baseZ | ((index >>> 4) & 15)),
+                        palette[value]);
+                }
+            }
+        }
+
+        // Index of the first occupied cell, or -1
+        int first() {
+            if (count == 0) return -1;
+            int perLong = 64 / bits;
+            for (int w = 0; w < data.capacity(); w++) {
+                long word = data.get(w);
+                if (word != 0) {
+                    return w * perLong + Long.numberOfTrailingZeros(word) / bits;
+                }
+            }
+            return -1;
+        }
+
+        private int read(int index) {
+            int perLong = 64 / bits;
+            long word = data.get(index / perLong);
+            return (int) ((word >>> ((index % perLong) * bits)) & ((1L << bits) - 1));
+        }
+
+        private void write(int index, int value) {
+            int perLong = 64 / bits;
+            int shift = (index % perLong) * bits;
+            long mask = ((1L << bits) - 1) << shift;
+            int w = index / perLong;
+            data.put(w, (data.get(w) & ~mask) | ((long) value << shift));
+        }
+
+        private int paletteIndex(Material material) {
+            // Neighbouring voxels mostly share a material
+            if (lastIndex != 0 && palette[lastIndex] == material) return lastIndex;
+            for (int i = 1; i < paletteSize; i++) {
+                if (palette[i] == material) return lastIndex = i;
+            }
+            if (paletteSize == palette.length) {
+                palette = Arrays.copyOf(palette, palette.length * 2);
+            }
+            palette[paletteSize] = material;
+            int index = paletteSize++;
+            if (index >= 1 << bits) {
+                resize(bits * 2);
+            }
+            return lastIndex = index;
+        }
+
+        // Widths stay powers of two so an entry never straddles two longs
+        private void resize(int newBits) {
+            int oldBits = bits;
+            LongBuffer old = data;
+            bits = newBits;
+            data = SectionMemory.allocate(CELLS * newBits / 64);
+            int perLong = 64 / oldBits;
+            long mask = (1L << oldBits) - 1;
+            for (int index = 0; index < CELLS; index++) {
+                int value = (int) ((old.get(index / perLong) >>> ((index % perLong) * oldBits)) & mask);
+                if (value != 0) write(index, value);
+            }
+            SectionMemory.free(old);
+        }
+    }
+}
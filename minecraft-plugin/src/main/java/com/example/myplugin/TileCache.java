@@ -0,0 +1,274 @@
+package com.example.voxelearth;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * The loaded tiles (indexedBlocks), bounded by an estimate of the memory
+ * their voxels take, on the heap or off it (see {@link SectionMemory}).
+ * Evicting a tile frees its off-heap sections for reuse right away.
+ *
+ * Once the tiles go over budget, the least recently used ones are evicted
+ * until they are back under it:
+ * placed tiles keep their record (bounds, Y offset, which VXCH records were
+ * decoded) but release their voxels, since the blocks are in the world now;
+ * tiles that were never placed are dropped from the index altogether and
+ * read back from the tile pack if a load asks for them again. Tiles being
+ * placed are never touched.
+ *
+ * The budget defaults to a quarter of the max heap, or the
+ * voxelearth.tileCacheMB system property, and can be changed with /tilecache.
+ *
+ * Before a tile's voxels are released, {@code onRelease} gets a chance to
+ * save what it can of them, such as the records of a partly decoded tile.
+ *
+ * Tiles are also indexed by the chunk columns their footprint covers, so
+ * placement only looks at the few tiles that can have blocks in a chunk.
+ */
+final class TileCache {
+
+    // Unplaced tiles younger than this are about to be placed by the load that registered them
+    private static final long MIN_IDLE_MS = 60_000;
+    // Evict down to this fraction of the budget so the next few decodes don't evict again
+    private static final double LOW_WATER = 0.9;
+
+    private final ConcurrentHashMap<String, TileRecord> tiles = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Set<TileRecord>> byChunk = new ConcurrentHashMap<>();
+    private volatile long budgetBytes;
+    private final Consumer<TileRecord> onRelease;
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder released = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder evictedBytes = new LongAdder();
+
+    TileCache() {
+        this(defaultBudget(), record -> { });
+    }
+
+    TileCache(Consumer<TileRecord> onRelease) {
+        this(defaultBudget(), onRelease);
+    }
+
+    TileCache(long budgetBytes) {
+        this(budgetBytes, record -> { });
+    }
+
+    TileCache(long budgetBytes, Consumer<TileRecord> onRelease) {
+        this.budgetBytes = budgetBytes;
+        this.onRelease = onRelease;
+    }
+
+    static long defaultBudget() {
+        long megabytes = Long.getLong("voxelearth.tileCacheMB", 0);
+        return megabytes > 0 ? megabytes << 20 : Runtime.getRuntime().maxMemory() / 4;
+    }
+
+    long getBudget() {
+        return budgetBytes;
+    }
+
+    void setBudget(long bytes) {
+        budgetBytes = bytes;
+        evictIfNeeded();
+    }
+
+    /** The tile with this key, or null; counts as a use for eviction. */
+    TileRecord get(String id) {
+        TileRecord record = tiles.get(id);
+        if (record != null) record.touch();
+        return record;
+    }
+
+    /** Whether a tile is loaded, counting a hit or a miss. */
+    boolean isResident(String id) {
+        TileRecord record = get(id);
+        (record != null ? hits : misses).increment();
+        return record != null;
+    }
+
+    void put(String id, TileRecord record) {
+        TileRecord old = tiles.put(id, record);
+        if (old != null) unindex(old);
+        index(record);
+    }
+
+    void putIfAbsent(String id, TileRecord record) {
+        if (tiles.putIfAbsent(id, record) == null) index(record);
+    }
+
+    /** Tiles whose footprint covers the chunk column at chunkX, chunkZ. */
+    Collection<TileRecord> inChunk(int chunkX, int chunkZ) {
+        Set<TileRecord> found = byChunk.get(chunkKey(chunkX, chunkZ));
+        return found == null ? Collections.emptySet() : found;
+    }
+
+    /** Tiles whose footprint overlaps the block range {minX, minZ, maxX, maxZ}, inclusive. */
+    Set<TileRecord> overlapping(int[] window) {
+        Set<TileRecord> found = new HashSet<>();
+        for (int cx = window[0] >> 4; cx <= window[2] >> 4; cx++) {
+            for (int cz = window[1] >> 4; cz <= window[3] >> 4; cz++) {
+                found.addAll(inChunk(cx, cz));
+            }
+        }
+        return found;
+    }
+
+    boolean isEmpty() {
+        return tiles.isEmpty();
+    }
+
+    Set<String> keySet() {
+        return tiles.keySet();
+    }
+
+    Collection<TileRecord> values() {
+        return tiles.values();
+    }
+
+    void forEach(BiConsumer<String, TileRecord> action) {
+        tiles.forEach(action);
+    }
+
+    /** Forgets every tile, freeing the voxels of those not being placed; the counters keep running. */
+    void clear() {
+        for (TileRecord record : tiles.values()) {
+            if (record.evict()) release(record);
+        }
+        tiles.clear();
+        byChunk.clear();
+    }
+
+    private void release(TileRecord record) {
+        onRelease.accept(record);
+        record.releasePayload();
+    }
+
+    /** Estimated bytes held by the voxels of all loaded tiles. */
+    long residentBytes() {
+        long bytes = 0;
+        for (TileRecord record : tiles.values()) {
+            bytes += record.payloadBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Evicts least recently used tiles until the loaded ones fit the budget.
+     * Callers decoding at the same time skip it rather than wait.
+     */
+    void evictIfNeeded() {
+        if (!evicting.compareAndSet(false, true)) return;
+        try {
+            List<TileRecord> candidates = new ArrayList<>(tiles.values());
+            long[] sizes = new long[candidates.size()];
+            // Snapshot of last use, so the sort sees stable keys while tiles keep being touched
+            long[] lastUsed = new long[candidates.size()];
+            long total = 0;
+            for (int i = 0; i < sizes.length; i++) {
+                sizes[i] = candidates.get(i).payloadBytes();
+                lastUsed[i] = candidates.get(i).lastUsed();
+                total += sizes[i];
+            }
+            long budget = budgetBytes;
+            if (total <= budget) return;
+
+            Integer[] order = new Integer[sizes.length];
+            for (int i = 0; i < order.length; i++) order[i] = i;
+            Arrays.sort(order, Comparator.comparingLong(i -> lastUsed[i]));
+
+            long target = (long) (budget * LOW_WATER);
+            long now = System.currentTimeMillis();
+            for (int i : order) {
+                if (total <= target) break;
+                TileRecord record = candidates.get(i);
+                switch (record.state()) {
+                    case PLACED:
+                    case EVICTED:
+                        if (sizes[i] == 0 || !record.evict()) continue;
+                        release(record);
+                        released.increment();
+                        break;
+                    case DECODED:
+                        // Evicting first keeps a load still holding the record from placing it
+                        if (now - lastUsed[i] < MIN_IDLE_MS || !record.evict()) continue;
+                        if (tiles.remove(record.id, record)) unindex(record);
+                        release(record);
+                        dropped.increment();
+                        break;
+                    default:
+                        continue;
+                }
+                total -= sizes[i];
+                evictedBytes.add(sizes[i]);
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private void index(TileRecord record) {
+        int[] footprint = record.footprint();
+        if (footprint == null) return;
+        for (int cx = footprint[0] >> 4; cx <= footprint[2] >> 4; cx++) {
+            for (int cz = footprint[1] >> 4; cz <= footprint[3] >> 4; cz++) {
+                byChunk.compute(chunkKey(cx, cz), (k, set) -> {
+                    if (set == null) set = ConcurrentHashMap.newKeySet();
+                    set.add(record);
+                    return set;
+                });
+            }
+        }
+    }
+
+    private void unindex(TileRecord record) {
+        int[] footprint = record.footprint();
+        if (footprint == null) return;
+        for (int cx = footprint[0] >> 4; cx <= footprint[2] >> 4; cx++) {
+            for (int cz = footprint[1] >> 4; cz <= footprint[3] >> 4; cz++) {
+                byChunk.computeIfPresent(chunkKey(cx, cz), (k, set) -> {
+                    set.remove(record);
+                    return set.isEmpty() ? null : set;
+                });
+            }
+        }
+    }
+
+    private static long chunkKey(int chunkX, int chunkZ) {
+        return (long) chunkX << 32 | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    /** One-line summary of the counters, for /tilecache. */
+    String stats() {
+        return String.format("%d tiles, %.1f / %.1f MB; hits %d, misses %d; released %d, dropped %d (%.1f MB); %s",
+            tiles.size(), residentBytes() / 1048576.0, budgetBytes / 1048576.0,
+            hits.sum(), misses.sum(), released.sum(), dropped.sum(), evictedBytes.sum() / 1048576.0,
+            SectionMemory.stats());
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    /** Tiles evicted so far, released or dropped. */
+    long evictions() {
+        return released.sum() + dropped.sum();
+    }
+}
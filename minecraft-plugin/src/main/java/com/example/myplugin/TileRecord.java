@@ -0,0 +1,227 @@
+package com.example.voxelearth;
+
+import org.bukkit.Material;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A loaded tile in indexedBlocks: its decoded voxels and fills, the lazy
+ * VXCH decoder behind them (null for JSON tiles), its block bounds and
+ * where it is in its lifecycle.
+ *
+ * The lifecycle only moves forward, DECODED to PLACING to PLACED, with
+ * EVICTED reachable from DECODED or PLACED. Transitions are compare-and-set,
+ * so when several loads race for the same tile exactly one of them gets to
+ * place it. The Y offset the tile is placed with is swapped in together
+ * with the state, so whoever sees PLACING or PLACED also sees the offset.
+ *
+ * An evicted tile counts as placed: if it was placed, its voxels have been
+ * released (see {@link TileCache}) but regions decoded later are still
+ * placed with its offset; if it wasn't, it has been dropped from the index
+ * and must not be placed by anyone still holding it.
+ *
+ * Voxels, fills and bounds are guarded by the lock on {@link #blocks}.
+ */
+final class TileRecord {
+
+    enum State { DECODED, PLACING, PLACED, EVICTED }
+
+    private static final State[] STATES = State.values();
+    // Set alongside EVICTED when the tile was dropped without ever being placed
+    private static final long NEVER_PLACED = 1L << 8;
+
+    final String id;
+    final SectionStore blocks;
+    final List<BlockFill> fills = new CopyOnWriteArrayList<>();
+    final VxchTile tile;
+
+    // Inclusive block bounds of everything decoded so far, before the Y offset
+    private int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+    private int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+
+    // State ordinal in the low byte, Y offset in the high 32 bits
+    private final AtomicLong lifecycle = new AtomicLong(pack(State.DECODED, 0));
+
+    private volatile long lastUsed = System.currentTimeMillis();
+
+    TileRecord(String id, SectionStore blocks, VxchTile tile) {
+        this.id = id;
+        this.blocks = blocks;
+        this.tile = tile;
+        synchronized (blocks) {
+            blocks.forEach((pos, material) -> extend(VoxelMap.x(pos), VoxelMap.y(pos), VoxelMap.z(pos)));
+        }
+    }
+
+    State state() {
+        return stateOf(lifecycle.get());
+    }
+
+    /** True once some load has started placing the tile, or it was evicted. */
+    boolean isClaimed() {
+        return state() != State.DECODED;
+    }
+
+    /** Y offset the tile is placed with, or {@code fallback} if it hasn't been claimed. */
+    int yOffset(int fallback) {
+        long value = lifecycle.get();
+        return stateOf(value) != State.DECODED ? (int) (value >> 32) : fallback;
+    }
+
+    /**
+     * True if the tile is being placed, or was placed, with the given Y
+     * offset, so its blocks there are or will be in the world.
+     */
+    boolean isPlacedWith(int yOffset) {
+        long value = lifecycle.get();
+        return stateOf(value) != State.DECODED && (value & NEVER_PLACED) == 0 && (int) (value >> 32) == yOffset;
+    }
+
+    /**
+     * Claims the tile for placement with the given Y offset. Returns false if
+     * another load claimed it first, or it was evicted.
+     */
+    boolean beginPlacing(int yOffset) {
+        long value = lifecycle.get();
+        while (stateOf(value) == State.DECODED) {
+            if (lifecycle.compareAndSet(value, pack(State.PLACING, yOffset))) return true;
+            value = lifecycle.get();
+        }
+        return false;
+    }
+
+    /** Called by the load that won {@link #beginPlacing} once its blocks are out. */
+    void finishPlacing() {
+        long value = lifecycle.get();
+        if (stateOf(value) == State.PLACING) {
+            lifecycle.compareAndSet(value, pack(State.PLACED, (int) (value >> 32)));
+        }
+    }
+
+    /** Marks the tile evicted unless it is being placed right now. */
+    boolean evict() {
+        long value = lifecycle.get();
+        while (stateOf(value) != State.PLACING) {
+            long evicted = pack(State.EVICTED, (int) (value >> 32)) | (stateOf(value) == State.DECODED ? NEVER_PLACED : 0);
+            if (stateOf(value) == State.EVICTED || lifecycle.compareAndSet(value, evicted)) return true;
+            value = lifecycle.get();
+        }
+        return false;
+    }
+
+    long lastUsed() {
+        return lastUsed;
+    }
+
+    void touch() {
+        lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * Estimated heap held by the tile's voxels and fills, plus decoded records
+     * still waiting to be written to the decoded cache.
+     */
+    long payloadBytes() {
+        long bytes;
+        synchronized (blocks) {
+            bytes = blocks.footprintBytes();
+        }
+        bytes += (long) fills.size() * BlockFill.FOOTPRINT_BYTES;
+        if (tile != null && tile.cacheBuilder != null) {
+            bytes += tile.cacheBuilder.footprintBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Drops the voxels and fills of an evicted tile, keeping its bounds and
+     * offset. A decoded cache still being collected for it is given up;
+     * TileCache saves what it has first.
+     */
+    void releasePayload() {
+        synchronized (blocks) {
+            blocks.clear();
+            fills.clear();
+        }
+        if (tile != null && tile.cacheBuilder != null) {
+            tile.cacheBuilder.abandon();
+        }
+    }
+
+    /** Adds a decoded region to the tile. */
+    void add(VoxelMap voxels, List<BlockFill> newFills) {
+        touch();
+        synchronized (blocks) {
+            blocks.putAll(voxels);
+            voxels.forEach((pos, material) -> extend(VoxelMap.x(pos), VoxelMap.y(pos), VoxelMap.z(pos)));
+            for (BlockFill fill : newFills) {
+                extend(fill.minX, fill.minY, fill.minZ);
+                extend(fill.maxX, fill.maxY, fill.maxZ);
+            }
+            fills.addAll(newFills);
+        }
+    }
+
+    /** Material decoded at a block position, or null. */
+    Material materialAt(int x, int y, int z) {
+        synchronized (blocks) {
+            if (x < minX || x > maxX || y < minY || y > maxY || z < minZ || z > maxZ) return null;
+            Material material = blocks.get(x, y, z);
+            if (material != null) return material;
+        }
+        for (BlockFill fill : fills) {
+            if (fill.contains(x, y, z)) return fill.material;
+        }
+        return null;
+    }
+
+    /** Lowest Y decoded so far, or Integer.MAX_VALUE if nothing is. */
+    int minY() {
+        synchronized (blocks) {
+            return minY;
+        }
+    }
+
+    /** {minX, minY, minZ, maxX, maxY, maxZ} of everything decoded so far, or null if nothing is. */
+    int[] bounds() {
+        synchronized (blocks) {
+            return minY == Integer.MAX_VALUE ? null : new int[]{minX, minY, minZ, maxX, maxY, maxZ};
+        }
+    }
+
+    /**
+     * {minX, minZ, maxX, maxZ} the tile covers: the whole VXCH grid, decoded or
+     * not, or the bounds of a JSON tile. Null for an empty JSON tile.
+     */
+    int[] footprint() {
+        if (tile != null) return tile.footprint();
+        int[] bounds = bounds();
+        return bounds == null ? null : new int[]{bounds[0], bounds[2], bounds[3], bounds[5]};
+    }
+
+    /** Footprint in blocks, X by Z, or Long.MAX_VALUE without one. */
+    long footprintArea() {
+        int[] footprint = footprint();
+        if (footprint == null) return Long.MAX_VALUE;
+        return (long) (footprint[2] - footprint[0] + 1) * (footprint[3] - footprint[1] + 1);
+    }
+
+    private void extend(int x, int y, int z) {
+        if (x < minX) minX = x;
+        if (x > maxX) maxX = x;
+        if (y < minY) minY = y;
+        if (y > maxY) maxY = y;
+        if (z < minZ) minZ = z;
+        if (z > maxZ) maxZ = z;
+    }
+
+    private static long pack(State state, int yOffset) {
+        return (long) yOffset << 32 | state.ordinal();
+    }
+
+    private static State stateOf(long value) {
+        return STATES[(int) (value & 0xFF)];
+    }
+}
@@ -9,6 +9,7 @@ import org.bukkit.generator.ChunkGenerator;
 import org.bukkit.plugin.java.JavaPlugin;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
@@ -24,6 +25,10 @@ import org.json.JSONObject;
 import java.lang.reflect.Field;
 
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 
 import java.util.UUID;
 
@@ -43,6 +48,19 @@ public class VoxelEarth extends JavaPlugin {
     private VoxelChunkGenerator voxelChunkGenerator;
     private PlayerMovementListener playerMovementListener;
 
+    private static final String TILE_PACK_NAME = "tiles.vxpack";
+    private static final String DECODED_PACK_NAME = "decoded.vxpack";
+    private static final long CLEANUP_INTERVAL = TimeUnit.HOURS.toMillis(1); // 1 hour
+
+    // The session packs, shared by every generator so only one VxchPack appends
+    // to, compacts or clears each file; opened with the first generator
+    private boolean sessionOpened;
+    private VxchPack tilePack;
+    private VxchPack decodedPack;
+
+    // Workers that decode VXCH chunk records for every generator; shut down on disable
+    private ForkJoinPool decodePool;
+
     // Per-player movement radius
     private ConcurrentHashMap<UUID, Double> movementRadiusMap = new ConcurrentHashMap<>();
     private ConcurrentHashMap<UUID, Double> visitRadiusMap = new ConcurrentHashMap<>();
@@ -74,13 +92,99 @@ public class VoxelEarth extends JavaPlugin {
     @Override
     public void onDisable() {
         getLogger().info("VoxelEarth has been disabled");
+        closeSessionPacks();
+        shutdownDecodePool();
+    }
+
+    /** The pack of voxelized tiles, or null if it could not be opened. */
+    VxchPack getTilePack() {
+        openSession();
+        return tilePack;
+    }
+
+    /** The pack of decoded tiles (see DecodedTileCache), or null if it could not be opened. */
+    VxchPack getDecodedPack() {
+        openSession();
+        return decodedPack;
+    }
+
+    /** The pool VXCH chunk records are decoded on, created with the first generator. */
+    synchronized ForkJoinPool getDecodePool() {
+        if (decodePool == null) {
+            decodePool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        }
+        return decodePool;
+    }
+
+    private synchronized void shutdownDecodePool() {
+        if (decodePool != null) {
+            decodePool.shutdownNow();
+            decodePool = null;
+        }
+    }
+
+    private synchronized void openSession() {
+        if (sessionOpened) return;
+        sessionOpened = true;
+        File sessionDir = new File(VoxelChunkGenerator.SESSION_DIR);
+        if (!sessionDir.exists()) {
+            sessionDir.mkdirs();
+        }
+        try {
+            tilePack = new VxchPack(new File(sessionDir, TILE_PACK_NAME));
+        } catch (IOException e) {
+            System.out.println("[WARN] Could not open tile pack, using loose VXCH files: " + e.getMessage());
+        }
+        try {
+            decodedPack = new VxchPack(new File(sessionDir, DECODED_PACK_NAME));
+        } catch (IOException e) {
+            System.out.println("[WARN] Could not open decoded tile cache: " + e.getMessage());
+        }
+        Bukkit.getScheduler().runTaskTimerAsynchronously(this, this::clearSessionDirectory,
+                CLEANUP_INTERVAL, CLEANUP_INTERVAL);
+    }
+
+    private void clearSessionDirectory() {
+        try {
+            // The packs are emptied in place; their mapped tiles stay readable until released
+            if (tilePack != null) {
+                tilePack.clear();
+            }
+            if (decodedPack != null) {
+                decodedPack.clear();
+            }
+            Files.walk(Paths.get(VoxelChunkGenerator.SESSION_DIR))
+                    .filter(Files::isRegularFile)
+                    .filter(path -> !path.getFileName().toString().startsWith(TILE_PACK_NAME)
+                        && !path.getFileName().toString().startsWith(DECODED_PACK_NAME))
+                    .forEach(path -> {
+                        try {
+                            Files.delete(path);
+                        } catch (IOException e) {
+                            // debug removed
+                        }
+                    });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private synchronized void closeSessionPacks() {
+        for (VxchPack pack : new VxchPack[]{tilePack, decodedPack}) {
+            if (pack == null) continue;
+            try {
+                pack.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
     }
 
     @Override
     public ChunkGenerator getDefaultWorldGenerator(String worldName, String id) {
         if (voxelChunkGenerator == null) {
             getLogger().info("VoxelEarth making new Chunk Generator");
-            voxelChunkGenerator = new VoxelChunkGenerator(this);
+            voxelChunkGenerator = new VoxelChunkGenerator(this, worldName);
         }
         getLogger().info("VoxelEarth is returning Default World Generator");
         return voxelChunkGenerator;
@@ -160,7 +264,7 @@ public class VoxelEarth extends JavaPlugin {
             if (args.length == 1) {
                 String worldName = args[0];
                 WorldCreator worldCreator = new WorldCreator(worldName);
-                worldCreator.generator(new VoxelChunkGenerator(this));
+                worldCreator.generator(new VoxelChunkGenerator(this, worldName));
                 World world = Bukkit.createWorld(worldCreator);
                 sender.sendMessage("Custom world '" + worldName + "' created!");
                 return true;
@@ -289,6 +393,34 @@ public class VoxelEarth extends JavaPlugin {
                 }
             });
 
+            return true;
+        } else if (command.getName().equalsIgnoreCase("convertvxch")) {
+            VoxelChunkGenerator generator = getVoxelChunkGenerator();
+
+            // Decoding and re-encoding every cached tile is too slow for the main thread
+            Bukkit.getScheduler().runTaskAsynchronously(this, () -> {
+                int converted = generator.convertVxchCache();
+                sender.sendMessage("Converted " + converted + " VXCH file(s) to version 2.");
+            });
+            return true;
+        } else if (command.getName().equalsIgnoreCase("tilecache")) {
+            // /tilecache [budgetMB]
+            TileCache tiles = getVoxelChunkGenerator().getTileCache();
+            if (args.length >= 1) {
+                try {
+                    long megabytes = Long.parseLong(args[0]);
+                    if (megabytes <= 0) {
+                        sender.sendMessage("Budget must be positive: " + args[0]);
+                        return true;
+                    }
+                    tiles.setBudget(megabytes << 20);
+                } catch (NumberFormatException e) {
+                    sender.sendMessage("Invalid number: " + args[0]);
+                    return true;
+                }
+            }
+            sender.sendMessage("Tile cache: " + tiles.stats());
+            sender.sendMessage("Color cache: " + getVoxelChunkGenerator().colorCacheStats());
             return true;
         }
         return false;
@@ -0,0 +1,220 @@
+package com.example.voxelearth;
+
+import org.bukkit.Material;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Block coordinates to materials, for the voxels of a decoded tile.
+ *
+ * Replaces a HashMap keyed by "x,y,z" strings. Coordinates are packed into
+ * one long (24 bits X, 24 bits Z, 16 bits Y) and kept in an open-addressing
+ * table next to a u16 index into a small per-map material palette, so a
+ * voxel costs about ten bytes of table and no objects. Y gets more bits than
+ * in Minecraft's BlockPos because tiles are decoded at their tile-space
+ * height, which can be thousands of blocks off before the tile is dropped
+ * to the ground.
+ *
+ * Not thread-safe; maps shared between threads are locked on the map itself.
+ */
+final class VoxelMap implements VoxelSource {
+
+    /** Receives each voxel of {@link #forEach}; unpack the position with {@link #x}, {@link #y}, {@link #z}. */
+    interface Visitor {
+        void visit(long pos, Material material);
+    }
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    // Palette index per slot; 0 marks an empty slot, so any long is a valid key
+    private short[] values;
+    private int size;
+    private int mask;
+    private int resizeAt;
+
+    private Material[] palette = new Material[8];
+    private int paletteSize = 1;
+    private final Map<Material, Integer> paletteIndex = new HashMap<>();
+    private Material lastMaterial;
+    private int lastIndex;
+
+    VoxelMap() {
+        this(MIN_CAPACITY);
+    }
+
+    VoxelMap(int expected) {
+        allocate(tableSize(expected));
+    }
+
+    /** Packs a block position; throws if it is out of range rather than aliasing another one. */
+    static long pack(int x, int y, int z) {
+        if (x << 8 >> 8 != x || z << 8 >> 8 != z || (short) y != y) {
+            throw new IllegalArgumentException("Block " + x + "," + y + "," + z + " is out of range");
+        }
+        return ((long) x & 0xFFFFFF) << 40 | ((long) z & 0xFFFFFF) << 16 | (y & 0xFFFF);
+    }
+
+    static int x(long pos) {
+        return (int) (pos >> 40);
+    }
+
+    static int y(long pos) {
+        return (short) pos;
+    }
+
+    static int z(long pos) {
+        return (int) (pos << 24 >> 40);
+    }
+
+    int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    void put(int x, int y, int z, Material material) {
+        put(pack(x, y, z), material);
+    }
+
+    void put(long pos, Material material) {
+        putIndex(pos, paletteIndex(material), true);
+    }
+
+    void putIfAbsent(long pos, Material material) {
+        putIndex(pos, paletteIndex(material), false);
+    }
+
+    Material get(int x, int y, int z) {
+        return get(pack(x, y, z));
+    }
+
+    Material get(long pos) {
+        for (int slot = slot(pos); ; slot = (slot + 1) & mask) {
+            if (values[slot] == 0) return null;
+            if (keys[slot] == pos) return palette[values[slot]];
+        }
+    }
+
+    /** Copies every voxel of {@code other} in, replacing voxels already present. */
+    void putAll(VoxelMap other) {
+        if (other.size == 0) return;
+        ensureCapacity(size + other.size);
+        // Map the other palette onto this one once instead of per voxel
+        short[] remap = new short[other.paletteSize];
+        for (int i = 1; i < other.paletteSize; i++) {
+            remap[i] = (short) paletteIndex(other.palette[i]);
+        }
+        for (int slot = 0; slot < other.values.length; slot++) {
+            if (other.values[slot] != 0) {
+                putIndex(other.keys[slot], remap[other.values[slot]], true);
+            }
+        }
+    }
+
+    @Override
+    public void forEach(Visitor visitor) {
+        for (int slot = 0; slot < values.length; slot++) {
+            if (values[slot] != 0) {
+                visitor.visit(keys[slot], palette[values[slot]]);
+            }
+        }
+    }
+
+    /** Position of some voxel in the map; the map must not be empty. */
+    long anyPosition() {
+        for (int slot = 0; slot < values.length; slot++) {
+            if (values[slot] != 0) return keys[slot];
+        }
+        throw new IllegalStateException("VoxelMap is empty");
+    }
+
+    /** Bytes held by the table and palette, for comparing against other layouts. */
+    long footprintBytes() {
+        return (long) keys.length * (Long.BYTES + Short.BYTES) + (long) palette.length * 4;
+    }
+
+    private void putIndex(long pos, int index, boolean replace) {
+        for (int slot = slot(pos); ; slot = (slot + 1) & mask) {
+            if (values[slot] == 0) {
+                keys[slot] = pos;
+                values[slot] = (short) index;
+                if (++size > resizeAt) {
+                    rehash(keys.length * 2);
+                }
+                return;
+            }
+            if (keys[slot] == pos) {
+                if (replace) values[slot] = (short) index;
+                return;
+            }
+        }
+    }
+
+    private int paletteIndex(Material material) {
+        // Neighbouring voxels mostly share a material
+        if (material == lastMaterial && lastIndex != 0) return lastIndex;
+        Integer index = paletteIndex.get(material);
+        if (index == null) {
+            if (paletteSize > 0xFFFF) {
+                throw new IllegalStateException("Too many materials in one VoxelMap");
+            }
+            if (paletteSize == palette.length) {
+                palette = Arrays.copyOf(palette, palette.length * 2);
+            }
+            index = paletteSize++;
+            palette[index] = material;
+            paletteIndex.put(material, index);
+        }
+        lastMaterial = material;
+        lastIndex = index;
+        return index;
+    }
+
+    private int slot(long pos) {
+        long h = pos * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void ensureCapacity(int expected) {
+        if (expected > resizeAt) {
+            rehash(tableSize(expected));
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        short[] oldValues = values;
+        allocate(capacity);
+        for (int slot = 0; slot < oldValues.length; slot++) {
+            if (oldValues[slot] == 0) continue;
+            int s = slot(oldKeys[slot]);
+            while (values[s] != 0) {
+                s = (s + 1) & mask;
+            }
+            keys[s] = oldKeys[slot];
+            values[s] = oldValues[slot];
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new short[capacity];
+        mask = capacity - 1;
+        resizeAt = capacity / 4 * 3;
+    }
+
+    // Smallest power of two that holds expected entries at a 3/4 load factor
+    private static int tableSize(int expected) {
+        long needed = Math.max(MIN_CAPACITY, (long) expected * 4 / 3 + 1);
+        if (needed > 1 << 30) {
+            throw new IllegalStateException("VoxelMap too large: " + expected);
+        }
+        return Integer.highestOneBit((int) needed - 1) << 1;
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.voxelearth;
+
+/** Voxels that can be walked for placement: a decoded batch or a tile's section store. */
+interface VoxelSource {
+
+    boolean isEmpty();
+
+    /** Visits every voxel; positions are packed with {@link VoxelMap#pack}. */
+    void forEach(VoxelMap.Visitor visitor);
+}
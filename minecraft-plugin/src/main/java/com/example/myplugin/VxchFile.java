@@ -0,0 +1,214 @@
+package com.example.voxelearth;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Read-only view of a VXCH chunked voxel file (as written by
+ * cuda_voxelizer's write_indexed_binary, or by {@link VxchWriter}).
+ *
+ * Version 1 uses 32^3 chunks and only an RGBA palette. Version 2 uses
+ * 16^3 chunks, the size of a Minecraft chunk section, and after the RGBA
+ * palette carries an optional block palette: a u32 count (0 or colorCount)
+ * followed by that many u16-length-prefixed UTF-8 block IDs such as
+ * "minecraft:stone", entry i naming the block for color index i + 1.
+ * Everything else, including the chunk table, is laid out the same way.
+ *
+ * The file is memory-mapped and the header, palette and chunk table are
+ * read straight from the mapping. Chunk payloads are handed out as slices
+ * of that mapping, so nothing is copied onto the heap until a chunk is
+ * actually decompressed.
+ */
+class VxchFile {
+
+    private static final int HEADER_BYTES = 4 + 4 + 7 * 2 + 4;
+    private static final int CHUNK_RECORD_BYTES = 8 + 4 + 4 + 2 + 2;
+
+    /** Bit in a chunk record's reserved field: a chunkType 1 chunk is fully occupied. */
+    static final int CHUNK_FLAG_SOLID = 1;
+
+    static final int VERSION_1 = 1;
+    static final int VERSION_2 = 2;
+    static final int V2_CHUNK_SIZE = 16;
+
+    private final File file;
+    private final ByteBuffer buf;
+
+    final int version;
+    final int chunkSize;
+    final int sizeX, sizeY, sizeZ;
+    final int chunkCountX, chunkCountY, chunkCountZ;
+    final int colorCount;
+
+    private final List<Color> palette;
+    private final List<String> blockPalette;
+    private final int chunkTableOffset;
+
+    private VxchFile(File file, ByteBuffer buf) throws IOException {
+        this.file = file;
+        this.buf = buf;
+
+        if (buf.limit() < HEADER_BYTES
+                || buf.get(0) != 'V' || buf.get(1) != 'X' || buf.get(2) != 'C' || buf.get(3) != 'H') {
+            throw new IOException("Invalid VXCH file: " + file);
+        }
+
+        version = buf.getInt(4);
+        if (version != VERSION_1 && version != VERSION_2) {
+            throw new IOException("Unsupported VXCH version " + version + ": " + file);
+        }
+
+        chunkSize = buf.getShort(8) & 0xFFFF;
+        sizeX = buf.getShort(10) & 0xFFFF;
+        sizeY = buf.getShort(12) & 0xFFFF;
+        sizeZ = buf.getShort(14) & 0xFFFF;
+        chunkCountX = buf.getShort(16) & 0xFFFF;
+        chunkCountY = buf.getShort(18) & 0xFFFF;
+        chunkCountZ = buf.getShort(20) & 0xFFFF;
+        colorCount = buf.getInt(22);
+
+        long paletteEnd = HEADER_BYTES + (long) colorCount * 4;
+        if (colorCount < 0 || paletteEnd > buf.limit()) {
+            throw new IOException("Truncated VXCH header in " + file);
+        }
+
+        // Palette is RGBA; index 0 is reserved for "empty"
+        palette = new ArrayList<>(colorCount + 1);
+        palette.add(null);
+        for (int i = 0, pos = HEADER_BYTES; i < colorCount; i++, pos += 4) {
+            palette.add(new Color(buf.get(pos) & 0xFF, buf.get(pos + 1) & 0xFF,
+                    buf.get(pos + 2) & 0xFF, buf.get(pos + 3) & 0xFF));
+        }
+
+        long tableStart = paletteEnd;
+        if (version == VERSION_2) {
+            if (paletteEnd + 4 > buf.limit()) {
+                throw new IOException("Truncated VXCH header in " + file);
+            }
+            int blockCount = buf.getInt((int) paletteEnd);
+            if (blockCount != 0 && blockCount != colorCount) {
+                throw new IOException("Block palette size " + blockCount + " does not match " + colorCount + " colors: " + file);
+            }
+            List<String> blocks = new ArrayList<>(blockCount);
+            int pos = (int) paletteEnd + 4;
+            for (int i = 0; i < blockCount; i++) {
+                if (pos + 2 > buf.limit()) {
+                    throw new IOException("Truncated VXCH header in " + file);
+                }
+                int len = buf.getShort(pos) & 0xFFFF;
+                if (pos + 2 + len > buf.limit()) {
+                    throw new IOException("Truncated VXCH header in " + file);
+                }
+                byte[] name = new byte[len];
+                ByteBuffer src = buf.duplicate();
+                src.position(pos + 2);
+                src.get(name);
+                blocks.add(new String(name, StandardCharsets.UTF_8));
+                pos += 2 + len;
+            }
+            blockPalette = Collections.unmodifiableList(blocks);
+            tableStart = pos;
+        } else {
+            blockPalette = Collections.emptyList();
+        }
+
+        if (tableStart + (long) getChunkCount() * CHUNK_RECORD_BYTES > buf.limit()) {
+            throw new IOException("Truncated VXCH header in " + file);
+        }
+        chunkTableOffset = (int) tableStart;
+    }
+
+    /**
+     * Maps the given file read-only. The channel is closed straight away;
+     * the mapping stays valid until the returned object is collected.
+     */
+    static VxchFile open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            return new VxchFile(file, mapped);
+        }
+    }
+
+    /**
+     * Reads a VXCH file that is already in memory or mapped, such as a
+     * {@link VxchPack} entry. {@code source} is only used in messages.
+     */
+    static VxchFile wrap(File source, ByteBuffer buf) throws IOException {
+        return new VxchFile(source, buf.order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    int getChunkCount() {
+        return chunkCountX * chunkCountY * chunkCountZ;
+    }
+
+    /** RGBA palette, index 0 is null. */
+    List<Color> getPalette() {
+        return palette;
+    }
+
+    /**
+     * Block IDs for color indices 1..colorCount (entry 0 is index 1), or an
+     * empty list if the file has none; always empty for version 1.
+     */
+    List<String> getBlockPalette() {
+        return blockPalette;
+    }
+
+    // Chunk records are stored in z, y, x order, 20 bytes each:
+    // u64 offset, u32 compressedSize, u32 uncompressedSize, u16 chunkType, u16 reserved
+
+    long chunkOffset(int index) {
+        return buf.getLong(recordPos(index));
+    }
+
+    int compressedSize(int index) {
+        return buf.getInt(recordPos(index) + 8);
+    }
+
+    int uncompressedSize(int index) {
+        return buf.getInt(recordPos(index) + 12);
+    }
+
+    int chunkType(int index) {
+        return buf.getShort(recordPos(index) + 16) & 0xFFFF;
+    }
+
+    int chunkReserved(int index) {
+        return buf.getShort(recordPos(index) + 18) & 0xFFFF;
+    }
+
+    /**
+     * Returns the compressed payload of a chunk as a slice of the mapping
+     * (position 0, little-endian), or null if the record points outside
+     * the file.
+     */
+    ByteBuffer chunkData(int index) {
+        long offset = chunkOffset(index);
+        int size = compressedSize(index);
+        if (offset < 0 || size < 0 || offset + size > buf.limit()) {
+            return null;
+        }
+        ByteBuffer slice = buf.duplicate();
+        slice.position((int) offset).limit((int) offset + size);
+        return slice.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private int recordPos(int index) {
+        return chunkTableOffset + index * CHUNK_RECORD_BYTES;
+    }
+}
@@ -0,0 +1,343 @@
+package com.example.voxelearth;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Append-only archive holding the VXCH output of many tiles in one file,
+ * instead of a _128.vxch file per tile in the session directory.
+ *
+ * Layout: "VXPK", u32 version, then entries of u16 keyLength, the tile ID
+ * in UTF-8, u64 payloadLength and the VXCH file itself. Adding a tile that
+ * is already present appends a new entry; a zero-length payload removes
+ * the tile. The directory (tile ID to payload position) is kept in memory
+ * and rebuilt on open by walking the entry headers, without touching any
+ * payload.
+ *
+ * The same container also holds other per-tile payloads, such as the
+ * {@link DecodedTileCache} entries, through {@link #add(String, ByteBuffer)}
+ * and {@link #map(String)}.
+ *
+ * Tiles are read through read-only mappings of their payload. Superseded
+ * entries are dropped by {@link #compact()}, which rewrites the live ones
+ * to a new file and swaps it in. Mappings handed out earlier stay valid,
+ * since the old file is only unlinked, never truncated.
+ *
+ * Instances don't coordinate with each other, so a file must only ever be
+ * open in one of them; the plugin shares its session packs between
+ * generators for that reason.
+ */
+class VxchPack {
+
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+
+    // Compact once dead entries outweigh live ones and are worth the copy
+    private static final long MIN_COMPACT_BYTES = 64L * 1024 * 1024;
+
+    private final File file;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object appendLock = new Object();
+    private final AtomicBoolean compacting = new AtomicBoolean();
+
+    private FileChannel channel;
+    private volatile Map<String, long[]> directory = new ConcurrentHashMap<>();
+    private long liveBytes;
+    private long deadBytes;
+
+    VxchPack(File file) throws IOException {
+        this.file = file;
+        openChannel();
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    boolean contains(String tileId) {
+        return directory.containsKey(tileId);
+    }
+
+    Set<String> tileIds() {
+        return directory.keySet();
+    }
+
+    /**
+     * Appends a VXCH file as the current version of a tile and deletes the
+     * loose file. Returns the tile read back from the pack.
+     */
+    VxchFile add(String tileId, File vxchFile) throws IOException {
+        try (FileChannel src = FileChannel.open(vxchFile.toPath(), StandardOpenOption.READ)) {
+            long size = src.size();
+            if (size == 0) {
+                throw new IOException("Empty VXCH file: " + vxchFile);
+            }
+            // The channel is only swapped while appendLock is held, so appends need no read lock
+            synchronized (appendLock) {
+                long payloadOffset = appendHeader(tileId, size);
+                long copied = 0;
+                while (copied < size) {
+                    copied += channel.transferFrom(src, payloadOffset + copied, size - copied);
+                }
+                track(tileId, new long[]{payloadOffset, size});
+            }
+        }
+        Files.deleteIfExists(vxchFile.toPath());
+        return open(tileId);
+    }
+
+    /** Appends an in-memory payload as the current version of a tile. */
+    void add(String tileId, ByteBuffer payload) throws IOException {
+        long size = payload.remaining();
+        if (size == 0) {
+            throw new IOException("Empty payload for " + tileId);
+        }
+        synchronized (appendLock) {
+            long payloadOffset = appendHeader(tileId, size);
+            ByteBuffer src = payload.duplicate();
+            while (src.hasRemaining()) {
+                channel.write(src, payloadOffset + (src.position() - payload.position()));
+            }
+            track(tileId, new long[]{payloadOffset, size});
+        }
+    }
+
+    /** Removes a tile; its payload is reclaimed by the next compaction. */
+    void remove(String tileId) throws IOException {
+        synchronized (appendLock) {
+            if (!directory.containsKey(tileId)) return;
+            appendHeader(tileId, 0);
+            long[] old = directory.remove(tileId);
+            liveBytes -= old[1];
+            deadBytes += old[1] + entryOverhead(tileId) * 2;
+        }
+    }
+
+    /** Maps the current version of a tile, or returns null if the pack doesn't have it. */
+    VxchFile open(String tileId) throws IOException {
+        ByteBuffer mapped = map(tileId);
+        return mapped == null ? null : VxchFile.wrap(file, mapped);
+    }
+
+    /** Maps the current payload of a tile read-only, or returns null if the pack doesn't have it. */
+    ByteBuffer map(String tileId) throws IOException {
+        lock.readLock().lock();
+        try {
+            long[] entry = directory.get(tileId);
+            if (entry == null) return null;
+            return channel.map(FileChannel.MapMode.READ_ONLY, entry[0], entry[1]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    boolean needsCompaction() {
+        synchronized (appendLock) {
+            return deadBytes > MIN_COMPACT_BYTES && deadBytes > liveBytes;
+        }
+    }
+
+    /**
+     * Rewrites the live entries into a fresh file and swaps it in. Reads go
+     * on while the copy runs; appends wait. Returns false if a compaction was
+     * already running.
+     */
+    boolean compact() throws IOException {
+        if (!compacting.compareAndSet(false, true)) return false;
+        try {
+            File tmp = new File(file.getPath() + ".tmp");
+            synchronized (appendLock) {
+                Map<String, long[]> compacted = new ConcurrentHashMap<>();
+                try (FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    writeFully(out, fileHeader());
+                    for (Map.Entry<String, long[]> e : directory.entrySet()) {
+                        long size = e.getValue()[1];
+                        writeFully(out, entryHeader(e.getKey(), size));
+                        long payloadOffset = out.position();
+                        long copied = 0;
+                        while (copied < size) {
+                            copied += channel.transferTo(e.getValue()[0] + copied, size - copied, out);
+                        }
+                        compacted.put(e.getKey(), new long[]{payloadOffset, size});
+                    }
+                    out.force(false);
+                }
+
+                lock.writeLock().lock();
+                boolean moved = false;
+                try {
+                    channel.close();
+                    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    moved = true;
+                } finally {
+                    // If the move failed the old file is still in place, and stays in use with its directory
+                    try {
+                        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                        channel.position(channel.size());
+                        if (moved) {
+                            directory = compacted;
+                            deadBytes = 0;
+                        }
+                    } finally {
+                        lock.writeLock().unlock();
+                    }
+                }
+            }
+            return true;
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    /** Drops every tile by starting a new, empty pack file. */
+    void clear() throws IOException {
+        synchronized (appendLock) {
+            lock.writeLock().lock();
+            try {
+                channel.close();
+                Files.deleteIfExists(file.toPath());
+            } finally {
+                // If the delete failed, this reopens the old file and rebuilds its directory
+                try {
+                    directory = new ConcurrentHashMap<>();
+                    liveBytes = 0;
+                    deadBytes = 0;
+                    openChannel();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            channel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void openChannel() throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() == 0) {
+            writeFully(channel, fileHeader());
+            return;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(header, 0);
+        if (header.get(0) != 'V' || header.get(1) != 'X' || header.get(2) != 'P' || header.get(3) != 'K'
+                || header.getInt(4) != VERSION) {
+            throw new IOException("Invalid VXCH pack: " + file);
+        }
+
+        // Rebuild the directory from the entry headers; a torn final entry is cut off
+        Map<String, long[]> entries = new HashMap<>();
+        long pos = HEADER_BYTES;
+        long size = channel.size();
+        ByteBuffer lenBuf = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        while (pos + 2 <= size) {
+            lenBuf.clear().limit(2);
+            readFully(lenBuf, pos);
+            int keyLength = lenBuf.getShort(0) & 0xFFFF;
+            if (pos + 2 + keyLength + 8 > size) break;
+
+            ByteBuffer key = ByteBuffer.allocate(keyLength);
+            readFully(key, pos + 2);
+            lenBuf.clear();
+            readFully(lenBuf, pos + 2 + keyLength);
+            long payloadLength = lenBuf.getLong(0);
+            long payloadOffset = pos + 2 + keyLength + 8;
+            if (payloadLength < 0 || payloadOffset + payloadLength > size) break;
+
+            String tileId = new String(key.array(), StandardCharsets.UTF_8);
+            long[] old = payloadLength == 0 ? entries.remove(tileId) : entries.put(tileId, new long[]{payloadOffset, payloadLength});
+            if (old != null) {
+                deadBytes += old[1] + entryOverhead(tileId);
+            }
+            if (payloadLength == 0) {
+                deadBytes += entryOverhead(tileId);
+            }
+            pos = payloadOffset + payloadLength;
+        }
+        if (pos < size) {
+            System.out.println("[WARN] Dropping " + (size - pos) + " bytes of incomplete entries from " + file);
+            channel.truncate(pos);
+        }
+        channel.position(pos);
+
+        directory = new ConcurrentHashMap<>(entries);
+        for (long[] entry : entries.values()) {
+            liveBytes += entry[1];
+        }
+    }
+
+    // Writes an entry header at the end of the file and returns where its payload starts
+    private long appendHeader(String tileId, long payloadLength) throws IOException {
+        long pos = channel.size();
+        ByteBuffer header = entryHeader(tileId, payloadLength);
+        int length = header.remaining();
+        while (header.hasRemaining()) {
+            channel.write(header, pos + header.position());
+        }
+        return pos + length;
+    }
+
+    private void track(String tileId, long[] entry) {
+        long[] old = directory.put(tileId, entry);
+        liveBytes += entry[1];
+        if (old != null) {
+            liveBytes -= old[1];
+            deadBytes += old[1] + entryOverhead(tileId);
+        }
+    }
+
+    private static long entryOverhead(String tileId) {
+        return 2 + tileId.getBytes(StandardCharsets.UTF_8).length + 8;
+    }
+
+    private static ByteBuffer fileHeader() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(new byte[]{'V', 'X', 'P', 'K'}).putInt(VERSION).flip();
+        return header;
+    }
+
+    private static ByteBuffer entryHeader(String tileId, long payloadLength) {
+        byte[] key = tileId.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(2 + key.length + 8).order(ByteOrder.LITTLE_ENDIAN);
+        header.putShort((short) key.length).put(key).putLong(payloadLength).flip();
+        return header;
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+    }
+
+    private void readFully(ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) {
+                throw new IOException("Unexpected end of " + file);
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.voxelearth;
+
+import org.bukkit.Material;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A downloaded tile whose VXCH chunk records are decoded on demand instead
+ * of all at once. The chunk table gives every record's position, so only
+ * the records overlapping a requested block range need to be read.
+ *
+ * The tile remembers which records have been claimed for decoding, so each
+ * record is decoded once no matter how many regions (or threads) ask for it.
+ *
+ * Records decoded before with the same scale and translation are read from
+ * {@code cache} instead of the VXCH payloads; {@code cacheBuilder}
+ * collects the others to write that cache, or extend a partial one.
+ */
+class VxchTile {
+
+    final String id;
+    final VxchFile vxch;
+    final double[] translation;
+    // Material per color index, filled in as colors are first matched; see resolveBlockPalette
+    final Material[] blockPalette;
+    final DecodedTileCache cache;
+    final DecodedTileCache.Builder cacheBuilder;
+
+    private final BitSet claimed;
+    private int claimedCount;
+
+    VxchTile(String id, VxchFile vxch, double[] translation, Material[] blockPalette,
+             DecodedTileCache cache, DecodedTileCache.Builder cacheBuilder) {
+        this.id = id;
+        this.vxch = vxch;
+        this.translation = translation;
+        this.blockPalette = blockPalette;
+        this.cache = cache;
+        this.cacheBuilder = cacheBuilder;
+
+        // Empty records never need decoding
+        int records = vxch.getChunkCount();
+        claimed = new BitSet(records);
+        for (int rec = 0; rec < records; rec++) {
+            if (vxch.chunkType(rec) == 0) {
+                claimed.set(rec);
+                claimedCount++;
+            }
+        }
+    }
+
+    /**
+     * Claims the unclaimed records whose world X/Z footprint overlaps the
+     * given block range (inclusive), across the tile's full height.
+     */
+    synchronized int[] claimRecords(int minX, int minZ, int maxX, int maxZ) {
+        int cs = vxch.chunkSize;
+        int ccx = vxch.chunkCountX;
+        int ccy = vxch.chunkCountY;
+        int ccz = vxch.chunkCountZ;
+
+        int[] out = new int[vxch.getChunkCount() - claimedCount];
+        int n = 0;
+        for (int cz = 0; cz < ccz; cz++) {
+            int z0 = cz * cs;
+            int zMax = Math.min(z0 + cs, vxch.sizeZ);
+            if ((int) (z0 + translation[2]) > maxZ || (int) (zMax - 1 + translation[2]) < minZ) continue;
+
+            for (int cx = 0; cx < ccx; cx++) {
+                int x0 = cx * cs;
+                int xMax = Math.min(x0 + cs, vxch.sizeX);
+                if ((int) (x0 + translation[0]) > maxX || (int) (xMax - 1 + translation[0]) < minX) continue;
+
+                // Records are stored z, y, x
+                for (int cy = 0; cy < ccy; cy++) {
+                    int rec = cx + cy * ccx + cz * ccx * ccy;
+                    if (!claimed.get(rec)) {
+                        claimed.set(rec);
+                        out[n++] = rec;
+                    }
+                }
+            }
+        }
+        claimedCount += n;
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    /** Claims every record not claimed yet. */
+    synchronized int[] claimAll() {
+        int[] out = new int[vxch.getChunkCount() - claimedCount];
+        int n = 0;
+        for (int rec = claimed.nextClearBit(0); rec < vxch.getChunkCount(); rec = claimed.nextClearBit(rec + 1)) {
+            out[n++] = rec;
+        }
+        claimed.set(0, vxch.getChunkCount());
+        claimedCount = vxch.getChunkCount();
+        return out;
+    }
+
+    synchronized boolean isFullyClaimed() {
+        return claimedCount == vxch.getChunkCount();
+    }
+
+    /** {minX, minZ, maxX, maxZ} of the world blocks the tile can decode to, inclusive. */
+    int[] footprint() {
+        return new int[]{(int) translation[0], (int) translation[2],
+            (int) (vxch.sizeX - 1 + translation[0]), (int) (vxch.sizeZ - 1 + translation[2])};
+    }
+
+    /** Number of records that hold voxels, i.e. that a full decode goes through. */
+    static int occupiedRecords(VxchFile vxch) {
+        int n = 0;
+        for (int rec = 0; rec < vxch.getChunkCount(); rec++) {
+            if (vxch.chunkType(rec) != 0) n++;
+        }
+        return n;
+    }
+}
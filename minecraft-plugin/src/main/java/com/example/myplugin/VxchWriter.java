@@ -0,0 +1,227 @@
+package com.example.voxelearth;
+
+import java.awt.Color;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Writes VXCH version 2 files (see {@link VxchFile} for the layout) and
+ * converts version 1 files to it.
+ *
+ * Chunks are 16^3 and encoded the same way as write_indexed_binary does:
+ * chunkType 1 with the SOLID flag for fully occupied single-color chunks,
+ * chunkType 2 (bitmask plus u16 color indices) for everything else.
+ */
+final class VxchWriter {
+
+    private VxchWriter() {
+    }
+
+    /**
+     * Rewrites a version 1 file as version 2 at {@code target}, resolving a
+     * block ID for every palette color by its index. {@code blockIds} may be
+     * null to write the file without a block palette. The target is replaced
+     * atomically.
+     */
+    static void convert(VxchFile v1, File target, IntFunction<String> blockIds) throws IOException {
+        short[] voxels = readVoxels(v1);
+
+        List<Color> palette = v1.getPalette();
+        List<String> blocks = null;
+        if (blockIds != null) {
+            blocks = new ArrayList<>(v1.colorCount);
+            for (int i = 1; i <= v1.colorCount; i++) {
+                blocks.add(blockIds.apply(i));
+            }
+        }
+
+        File tmp = new File(target.getPath() + ".tmp");
+        write(tmp, v1.sizeX, v1.sizeY, v1.sizeZ, voxels, palette, blocks);
+        Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Decodes every chunk of a file into one color index per voxel, indexed
+     * x + y * sizeX + z * sizeX * sizeY (0 is empty). Legacy chunkType 1
+     * records without the SOLID flag carry no occupancy and are left empty.
+     */
+    static short[] readVoxels(VxchFile vxch) throws IOException {
+        long cells = (long) vxch.sizeX * vxch.sizeY * vxch.sizeZ;
+        if (cells > Integer.MAX_VALUE) {
+            throw new IOException("VXCH grid too large to convert: " + vxch.getFile());
+        }
+        short[] voxels = new short[(int) cells];
+        int cs = vxch.chunkSize;
+        int ccx = vxch.chunkCountX;
+        int ccy = vxch.chunkCountY;
+        RleDecoder decoder = RleDecoder.get();
+
+        for (int rec = 0; rec < vxch.getChunkCount(); rec++) {
+            int chunkType = vxch.chunkType(rec);
+            if (chunkType == 0) continue;
+            if (chunkType == 1 && (vxch.chunkReserved(rec) & VxchFile.CHUNK_FLAG_SOLID) == 0) continue;
+
+            ByteBuffer comp = vxch.chunkData(rec);
+            if (comp == null) {
+                throw new IOException("Invalid chunk offset/size in " + vxch.getFile());
+            }
+            int length = decoder.decode(comp, vxch.uncompressedSize(rec));
+            byte[] data = decoder.buffer();
+
+            int x0 = (rec % ccx) * cs;
+            int y0 = ((rec / ccx) % ccy) * cs;
+            int z0 = (rec / (ccx * ccy)) * cs;
+            int dx = Math.min(cs, vxch.sizeX - x0);
+            int dy = Math.min(cs, vxch.sizeY - y0);
+            int dz = Math.min(cs, vxch.sizeZ - z0);
+            if (dx <= 0 || dy <= 0 || dz <= 0) continue;
+
+            if (chunkType == 1) {
+                if (length < 2) continue;
+                short ci = (short) ((data[0] & 0xFF) | (data[1] & 0xFF) << 8);
+                for (int z = 0; z < dz; z++) {
+                    for (int y = 0; y < dy; y++) {
+                        int base = x0 + (y0 + y) * vxch.sizeX + (z0 + z) * vxch.sizeX * vxch.sizeY;
+                        for (int x = 0; x < dx; x++) {
+                            voxels[base + x] = ci;
+                        }
+                    }
+                }
+            } else if (chunkType == 2) {
+                int totalCells = dx * dy * dz;
+                int pos = (totalCells + 7) / 8;
+                for (int cell = 0; cell < totalCells && pos + 1 < length; cell++) {
+                    if ((data[cell >> 3] & (1 << (cell & 7))) == 0) continue;
+                    int x = cell % dx;
+                    int y = (cell / dx) % dy;
+                    int z = cell / (dx * dy);
+                    voxels[(x0 + x) + (y0 + y) * vxch.sizeX + (z0 + z) * vxch.sizeX * vxch.sizeY] =
+                        (short) ((data[pos] & 0xFF) | (data[pos + 1] & 0xFF) << 8);
+                    pos += 2;
+                }
+            }
+        }
+        return voxels;
+    }
+
+    /**
+     * Writes a version 2 file. {@code palette} is indexed like
+     * {@link VxchFile#getPalette()} (entry 0 unused); {@code blockIds}, if
+     * not null, holds one ID per color starting at index 1.
+     */
+    static void write(File file, int sizeX, int sizeY, int sizeZ, short[] voxels,
+                      List<Color> palette, List<String> blockIds) throws IOException {
+        int cs = VxchFile.V2_CHUNK_SIZE;
+        int ccx = (sizeX + cs - 1) / cs;
+        int ccy = (sizeY + cs - 1) / cs;
+        int ccz = (sizeZ + cs - 1) / cs;
+        int colorCount = palette.size() - 1;
+
+        byte[][] names = new byte[blockIds != null ? colorCount : 0][];
+        int blockPaletteBytes = 4;
+        for (int i = 0; i < names.length; i++) {
+            names[i] = blockIds.get(i).getBytes(StandardCharsets.UTF_8);
+            blockPaletteBytes += 2 + names[i].length;
+        }
+
+        int chunkCount = ccx * ccy * ccz;
+        long dataStart = 26 + colorCount * 4L + blockPaletteBytes + chunkCount * 20L;
+        ByteBuffer table = ByteBuffer.allocate(chunkCount * 20).order(ByteOrder.LITTLE_ENDIAN);
+        ByteArrayOutputStream payloads = new ByteArrayOutputStream();
+        byte[] raw = new byte[cs * cs * cs / 8 + cs * cs * cs * 2];
+
+        for (int cz = 0; cz < ccz; cz++) {
+            for (int cy = 0; cy < ccy; cy++) {
+                for (int cx = 0; cx < ccx; cx++) {
+                    int x0 = cx * cs, y0 = cy * cs, z0 = cz * cs;
+                    int dx = Math.min(cs, sizeX - x0);
+                    int dy = Math.min(cs, sizeY - y0);
+                    int dz = Math.min(cs, sizeZ - z0);
+                    int totalCells = dx * dy * dz;
+                    int bitmaskBytes = (totalCells + 7) / 8;
+
+                    Arrays.fill(raw, 0, bitmaskBytes, (byte) 0);
+                    int filled = 0;
+                    short first = 0;
+                    boolean allSame = true;
+                    int pos = bitmaskBytes;
+                    for (int z = 0; z < dz; z++) {
+                        for (int y = 0; y < dy; y++) {
+                            int base = x0 + (y0 + y) * sizeX + (z0 + z) * sizeX * sizeY;
+                            for (int x = 0; x < dx; x++) {
+                                short ci = voxels[base + x];
+                                if (ci == 0) continue;
+                                int cell = x + y * dx + z * dx * dy;
+                                raw[cell >> 3] |= (byte) (1 << (cell & 7));
+                                raw[pos++] = (byte) ci;
+                                raw[pos++] = (byte) (ci >> 8);
+                                if (filled++ == 0) {
+                                    first = ci;
+                                } else if (ci != first) {
+                                    allSame = false;
+                                }
+                            }
+                        }
+                    }
+
+                    if (filled == 0) {
+                        table.putLong(0).putInt(0).putInt(0).putShort((short) 0).putShort((short) 0);
+                        continue;
+                    }
+
+                    int chunkType;
+                    int flags;
+                    byte[] comp;
+                    int uncompressedSize;
+                    if (allSame && filled == totalCells) {
+                        chunkType = 1;
+                        flags = VxchFile.CHUNK_FLAG_SOLID;
+                        comp = RleEncoder.encode(new byte[]{(byte) first, (byte) (first >> 8)}, 2);
+                        uncompressedSize = 2;
+                    } else {
+                        chunkType = 2;
+                        flags = 0;
+                        comp = RleEncoder.encode(raw, pos);
+                        uncompressedSize = pos;
+                    }
+
+                    table.putLong(dataStart + payloads.size()).putInt(comp.length).putInt(uncompressedSize)
+                        .putShort((short) chunkType).putShort((short) flags);
+                    payloads.write(comp, 0, comp.length);
+                }
+            }
+        }
+
+        ByteBuffer header = ByteBuffer.allocate((int) (dataStart - chunkCount * 20L)).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(new byte[]{'V', 'X', 'C', 'H'}).putInt(VxchFile.VERSION_2);
+        header.putShort((short) cs).putShort((short) sizeX).putShort((short) sizeY).putShort((short) sizeZ);
+        header.putShort((short) ccx).putShort((short) ccy).putShort((short) ccz);
+        header.putInt(colorCount);
+        for (int i = 1; i <= colorCount; i++) {
+            Color c = palette.get(i);
+            header.put((byte) c.getRed()).put((byte) c.getGreen()).put((byte) c.getBlue()).put((byte) c.getAlpha());
+        }
+        header.putInt(names.length);
+        for (byte[] name : names) {
+            header.putShort((short) name.length).put(name);
+        }
+
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(header.array());
+            out.write(table.array());
+            payloads.writeTo(out);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.voxelearth;
+
+import org.bukkit.Material;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link ColorDistance} metrics on the colors of real tiles:
+ * the VXCH files and tiles.vxpack in -Dvoxelearth.benchSession (default
+ * ./session), or random colors if there are none. Each is matched against
+ * the vanilla atlas one at a time, as a cache miss in the generator is.
+ * Scores are per color.
+ *
+ * main() first prints, per metric, matches per second and how often and
+ * by how much (in CIEDE2000) its block differs from CIEDE2000's. The
+ * report says which colors it used: random ones cover RGB evenly, unlike
+ * the palettes of real tiles, so their agreement figures only show that
+ * the metrics run, not how they compare on a session.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ *           -Dexec.mainClass=com.example.voxelearth.ColorDistanceBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColorDistanceBenchmark {
+
+    private static final int MAX_COLORS = 1 << 16;
+    private static final int RANDOM_COLORS = 4096;
+
+    @Param({"CIEDE2000", "CIE94", "CIE76", "REDMEAN"})
+    public String metric;
+
+    private LabPalette palette;
+    private int[] colors;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        ColorDistance distance = ColorDistance.valueOf(metric);
+        palette = new LabPalette(atlas(new ArrayList<>()), distance);
+        colors = sessionColors();
+        if (colors.length == 0) colors = randomColors();
+    }
+
+    @Benchmark
+    public int match() {
+        int rgb = colors[next++ & (colors.length - 1)];
+        return palette.matchIndex(rgb >>> 16, rgb >>> 8 & 0xFF, rgb & 0xFF, palette.metric().maxMatchDistance);
+    }
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        List<String> names = new ArrayList<>();
+        List<MaterialColor> atlas = atlas(names);
+        int[] colors = sessionColors();
+        boolean random = colors.length == 0;
+        if (random) colors = randomColors();
+        int[] reference = null;
+        System.out.printf("%d colors (%s), %d atlas entries%n", colors.length,
+            random ? "random, not representative of real tiles" : "from session tiles", atlas.size());
+        System.out.printf("%-10s %14s %10s %14s%n", "metric", "matches/s", "differ", "mean dE00 +");
+        for (ColorDistance metric : ColorDistance.values()) {
+            LabPalette palette = new LabPalette(atlas, metric);
+            int[] matched = new int[colors.length];
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < 5; run++) {
+                long start = System.nanoTime();
+                for (int i = 0; i < colors.length; i++) {
+                    int rgb = colors[i];
+                    matched[i] = palette.matchIndex(rgb >>> 16, rgb >>> 8 & 0xFF, rgb & 0xFF, metric.maxMatchDistance);
+                }
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            if (reference == null) reference = matched;
+
+            // Some blocks have several entries, so names are compared rather than indices
+            int differ = 0;
+            double penalty = 0;
+            for (int i = 0; i < colors.length; i++) {
+                if (name(names, matched[i]).equals(name(names, reference[i]))) continue;
+                differ++;
+                if (matched[i] >= 0 && reference[i] >= 0) {
+                    penalty += deltaE(colors[i], atlas.get(matched[i])) - deltaE(colors[i], atlas.get(reference[i]));
+                }
+            }
+            System.out.printf("%-10s %14.0f %9.2f%% %14.3f%n", metric, colors.length * 1e9 / best,
+                100.0 * differ / colors.length, differ == 0 ? 0.0 : penalty / differ);
+        }
+
+        new Runner(new OptionsBuilder()
+                .include(ColorDistanceBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    // The vanilla atlas as the generator loads it, with each entry's block name added to names
+    private static List<MaterialColor> atlas(List<String> names) throws IOException {
+        List<MaterialColor> colors = new ArrayList<>();
+        try (InputStream is = ColorDistanceBenchmark.class.getResourceAsStream("/vanilla.atlas")) {
+            if (is == null) throw new IOException("vanilla.atlas is not on the classpath");
+            JSONArray blocks = new JSONObject(new JSONTokener(is)).getJSONArray("blocks");
+            for (int i = 0; i < blocks.length(); i++) {
+                JSONObject block = blocks.getJSONObject(i);
+                JSONObject colour = block.getJSONObject("colour");
+                names.add(block.getString("name"));
+                Material material = Material.matchMaterial(block.getString("name").replace("minecraft:", ""));
+                colors.add(new MaterialColor(material != null ? material : Material.STONE, new Color(
+                    (int) (colour.getDouble("r") * 255), (int) (colour.getDouble("g") * 255),
+                    (int) (colour.getDouble("b") * 255))));
+            }
+        }
+        return colors;
+    }
+
+    // Distinct colors of the session's tiles, a power of two of them for match(); empty without tiles
+    private static int[] sessionColors() throws IOException {
+        File dir = new File(System.getProperty("voxelearth.benchSession", "session"));
+        Set<Integer> seen = new LinkedHashSet<>();
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".vxch"));
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                addColors(VxchFile.open(file), seen);
+            }
+        }
+        File packFile = new File(dir, "tiles.vxpack");
+        if (packFile.isFile()) {
+            VxchPack pack = new VxchPack(packFile);
+            try {
+                for (String tileId : pack.tileIds()) {
+                    addColors(pack.open(tileId), seen);
+                }
+            } finally {
+                pack.close();
+            }
+        }
+        if (seen.isEmpty()) {
+            System.out.println("No tiles in " + dir + ", using random colors");
+            return new int[0];
+        }
+        return powerOfTwo(seen);
+    }
+
+    // Distinct random colors, the same ones every run
+    private static int[] randomColors() {
+        Set<Integer> seen = new LinkedHashSet<>();
+        Random random = new Random(42);
+        while (seen.size() < RANDOM_COLORS) {
+            seen.add(random.nextInt(0x1000000));
+        }
+        return powerOfTwo(seen);
+    }
+
+    private static int[] powerOfTwo(Set<Integer> seen) {
+        int size = Integer.highestOneBit(Math.min(seen.size(), MAX_COLORS));
+        int[] colors = new int[size];
+        int i = 0;
+        for (int rgb : seen) {
+            if (i == size) break;
+            colors[i++] = rgb;
+        }
+        return colors;
+    }
+
+    private static void addColors(VxchFile file, Set<Integer> seen) {
+        for (Color color : file.getPalette()) {
+            if (color != null && seen.size() < MAX_COLORS) seen.add(color.getRGB() & 0xFFFFFF);
+        }
+    }
+
+    private static String name(List<String> names, int index) {
+        return index < 0 ? "none" : names.get(index);
+    }
+
+    private static double deltaE(int rgb, MaterialColor entry) {
+        return ColorUtils.deltaE(ColorUtils.rgbToLab(new Color(rgb)), ColorUtils.rgbToLab(entry.getColor()));
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.voxelearth;
+
+import org.bukkit.Material;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DecodedTileCacheTest {
+
+    private static final double[] TRANSLATION = {-1200.5, 64, 300.25};
+
+    @Test
+    public void readsBackWhatWasRecorded() {
+        long[] key = DecodedTileCache.key(2.1, 2.1, 2.1, TRANSLATION, 0x1234_5678_9ABCL);
+
+        VoxelMap first = new VoxelMap();
+        first.put(-1200, 70, 300, Material.STONE);
+        first.put(-1190, 75, 310, Material.DIRT);
+        first.put(-1199, 64, 301, Material.STONE);
+        List<BlockFill> fills = Collections.singletonList(
+            new BlockFill(-1184, 64, 300, -1169, 79, 315, Material.GRASS_BLOCK));
+        VoxelMap last = new VoxelMap();
+        last.put(-1100, 90, 400, Material.OAK_LOG);
+
+        // Record 1 is empty and never decoded
+        DecodedTileCache.Builder builder = new DecodedTileCache.Builder(key, 3, 2);
+        builder.record(2, last, Collections.emptyList());
+        assertNull(builder.finish());
+        builder.record(0, first, fills);
+        ByteBuffer encoded = builder.finish();
+        assertNotNull(encoded);
+        assertNull(builder.finish());
+
+        DecodedTileCache cache = DecodedTileCache.read(encoded, key, 3);
+        assertNotNull(cache);
+        assertEquals(2, cache.cachedRecords());
+        assertFalse(cache.contains(1));
+        assertRecord(cache, 0, first, fills);
+        assertRecord(cache, 2, last, Collections.emptyList());
+    }
+
+    @Test
+    public void extendsAPartialCache() {
+        long[] key = DecodedTileCache.key(2.1, 2.1, 2.1, TRANSLATION, 7);
+        VoxelMap first = new VoxelMap();
+        first.put(10, 70, 10, Material.STONE);
+        VoxelMap second = new VoxelMap();
+        second.put(30, 70, 10, Material.DIRT);
+        VoxelMap third = new VoxelMap();
+        third.put(50, 70, 10, Material.OAK_LOG);
+
+        // Evicted after one of its three records was decoded
+        DecodedTileCache.Builder builder = new DecodedTileCache.Builder(key, 3, 3);
+        builder.record(1, second, Collections.emptyList());
+        assertNull(builder.finish());
+        ByteBuffer partial = builder.finishPartial();
+        assertNotNull(partial);
+        DecodedTileCache cache = DecodedTileCache.read(partial, key, 3);
+        assertEquals(1, cache.cachedRecords());
+        assertTrue(cache.contains(1));
+        assertFalse(cache.contains(0));
+
+        // Loaded again: nothing new yet, so nothing to write
+        assertNull(new DecodedTileCache.Builder(key, 3, 2, cache).finishPartial());
+
+        // The other records are decoded from VXCH and join the cached one
+        builder = new DecodedTileCache.Builder(key, 3, 2, cache);
+        builder.record(0, first, Collections.emptyList());
+        assertNull(builder.finish());
+        builder.record(2, third, Collections.emptyList());
+        DecodedTileCache full = DecodedTileCache.read(builder.finish(), key, 3);
+        assertEquals(3, full.cachedRecords());
+        assertRecord(full, 0, first, Collections.emptyList());
+        assertRecord(full, 1, second, Collections.emptyList());
+        assertRecord(full, 2, third, Collections.emptyList());
+    }
+
+    @Test
+    public void missesOnAnyOtherKey() {
+        long[] key = DecodedTileCache.key(2.1, 2.1, 2.1, TRANSLATION, 42);
+        VoxelMap blocks = new VoxelMap();
+        blocks.put(0, 64, 0, Material.STONE);
+        DecodedTileCache.Builder builder = new DecodedTileCache.Builder(key, 1, 1);
+        builder.record(0, blocks, Collections.emptyList());
+        ByteBuffer encoded = builder.finish();
+
+        assertNull(DecodedTileCache.read(encoded, DecodedTileCache.key(2.0, 2.1, 2.1, TRANSLATION, 42), 1));
+        assertNull(DecodedTileCache.read(encoded, DecodedTileCache.key(2.1, 2.1, 2.1, new double[]{0, 64, 0}, 42), 1));
+        // Another atlas or metric
+        assertNull(DecodedTileCache.read(encoded, DecodedTileCache.key(2.1, 2.1, 2.1, TRANSLATION, 43), 1));
+        assertNull(DecodedTileCache.read(encoded, key, 2));
+        assertNotNull(DecodedTileCache.read(encoded, key, 1));
+    }
+
+    private static void assertRecord(DecodedTileCache cache, int rec, VoxelMap expected, List<BlockFill> expectedFills) {
+        VoxelMap blocks = new VoxelMap();
+        List<BlockFill> fills = new ArrayList<>();
+        cache.decodeRecord(rec, blocks, fills);
+        assertEquals(toMap(expected), toMap(blocks));
+        assertEquals(expectedFills.size(), fills.size());
+        for (int i = 0; i < fills.size(); i++) {
+            BlockFill a = expectedFills.get(i), b = fills.get(i);
+            assertTrue(a.minX == b.minX && a.minY == b.minY && a.minZ == b.minZ
+                && a.maxX == b.maxX && a.maxY == b.maxY && a.maxZ == b.maxZ && a.material == b.material);
+        }
+    }
+
+    private static Map<Long, Material> toMap(VoxelMap blocks) {
+        Map<Long, Material> map = new HashMap<>();
+        blocks.forEach(map::put);
+        return map;
+    }
+}
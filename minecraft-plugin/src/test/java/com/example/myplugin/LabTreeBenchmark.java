@@ -0,0 +1,147 @@
+package com.example.voxelearth;
+
+import org.bukkit.Material;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link LabTree} with the CIEDE2000 scan over every palette entry
+ * it replaced, on random palettes of 200 and 1000 entries and random query
+ * colors, and {@link LabPalette#matchAll} with matching the same sRGB colors
+ * one at a time. Scores are per color. main() first checks that all of them
+ * pick the same entries.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ *           -Dexec.mainClass=com.example.voxelearth.LabTreeBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LabTreeBenchmark {
+
+    private static final int QUERIES = 1024;
+
+    @Param({"200", "1000"})
+    public int paletteSize;
+
+    private float[] lab;
+    private Material[] materials;
+    private LabTree tree;
+    private LabPalette palette;
+    private float[][] queries;
+    private int[] rgbQueries;
+    private int[] matched;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(paletteSize);
+        lab = new float[paletteSize * 3];
+        materials = new Material[paletteSize];
+        List<MaterialColor> colors = new ArrayList<>();
+        Material[] all = Material.values();
+        for (int i = 0; i < paletteSize; i++) {
+            Color color = new Color(random.nextInt(0x1000000));
+            ColorUtils.rgbToLab(color.getRed(), color.getGreen(), color.getBlue(), lab, i * 3);
+            materials[i] = all[i % all.length];
+            colors.add(new MaterialColor(materials[i], color));
+        }
+        tree = new LabTree(lab, materials, ColorDistance.CIEDE2000);
+        palette = new LabPalette(colors);
+        queries = new float[QUERIES][3];
+        rgbQueries = new int[QUERIES];
+        matched = new int[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            rgbQueries[i] = random.nextInt(0x1000000);
+            ColorUtils.rgbToLab(rgbQueries[i] >>> 16, rgbQueries[i] >>> 8 & 0xFF, rgbQueries[i] & 0xFF, queries[i], 0);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void linearScan(Blackhole bh) {
+        for (float[] query : queries) {
+            bh.consume(scan(query));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void labTree(Blackhole bh) {
+        double[] distances = new double[1];
+        for (float[] query : queries) {
+            bh.consume(tree.nearest(query, distances, false));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void paletteOneByOne(Blackhole bh) {
+        for (int rgb : rgbQueries) {
+            bh.consume(palette.matchIndex(rgb >>> 16, rgb >>> 8 & 0xFF, rgb & 0xFF, Double.MAX_VALUE));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public int[] paletteBatch() {
+        palette.matchAll(rgbQueries, QUERIES, Double.MAX_VALUE, matched);
+        return matched;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int size : new int[]{200, 1000}) {
+            LabTreeBenchmark check = new LabTreeBenchmark();
+            check.paletteSize = size;
+            check.setup();
+            double[] distances = new double[1];
+            check.paletteBatch();
+            for (int i = 0; i < QUERIES; i++) {
+                int expected = check.scan(check.queries[i]);
+                if (expected != check.tree.nearest(check.queries[i], distances, false) || expected != check.matched[i]) {
+                    throw new IllegalStateException("Tree, batch and scan disagree on a " + size + " entry palette");
+                }
+            }
+        }
+
+        new Runner(new OptionsBuilder()
+                .include(LabTreeBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    // The loop LabPalette.match ran before the tree
+    private int scan(float[] query) {
+        int best = -1;
+        double minDeltaE = Double.MAX_VALUE;
+        for (int i = 0, p = 0; i < materials.length; i++, p += 3) {
+            double deltaE = ColorUtils.deltaE(query[0], query[1], query[2], lab[p], lab[p + 1], lab[p + 2]);
+            if (deltaE < minDeltaE) {
+                minDeltaE = deltaE;
+                best = i;
+            }
+        }
+        return best;
+    }
+}
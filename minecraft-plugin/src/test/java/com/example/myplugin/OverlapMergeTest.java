@@ -0,0 +1,159 @@
+package com.example.voxelearth;
+
+import org.bukkit.Material;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class OverlapMergeTest {
+
+    @Test
+    public void finerTileOwnsItsFootprintInEitherOrder() {
+        Map<Long, Material> expected = null;
+        for (boolean fineFirst : new boolean[]{true, false}) {
+            for (boolean release : new boolean[]{false, true}) {
+                TileRecord coarse = coarse(), fine = fine();
+                Map<Long, Material> world = fineFirst
+                    ? placeBoth(fine, coarse, release)
+                    : placeBoth(coarse, fine, release);
+                if (expected == null) {
+                    expected = world;
+                } else {
+                    assertEquals("fine first " + fineFirst + ", released " + release, expected, world);
+                }
+            }
+        }
+
+        // The fine tile's columns hold only its blocks; the coarse one's fill is cut around them
+        assertEquals(Material.DIRT, expected.get(VoxelMap.pack(8, 64, 8)));
+        assertEquals(Material.DIRT, expected.get(VoxelMap.pack(12, 66, 12)));
+        assertNull(expected.get(VoxelMap.pack(12, 70, 12)));
+        assertNull(expected.get(VoxelMap.pack(10, 64, 10)));
+        assertEquals(Material.STONE, expected.get(VoxelMap.pack(7, 64, 10)));
+        assertEquals(Material.STONE, expected.get(VoxelMap.pack(16, 70, 12)));
+        assertEquals(Material.STONE, expected.get(VoxelMap.pack(31, 64, 31)));
+    }
+
+    @Test
+    public void sameSizeTilesSplitTheirOverlap() {
+        Map<Long, Material> expected = null;
+        for (boolean westFirst : new boolean[]{true, false}) {
+            for (boolean release : new boolean[]{false, true}) {
+                TileRecord west = square("west", 0, Material.STONE), east = square("east", 8, Material.DIRT);
+                Map<Long, Material> world = westFirst
+                    ? placeBoth(west, east, release)
+                    : placeBoth(east, west, release);
+                if (expected == null) {
+                    expected = world;
+                } else {
+                    assertEquals("west first " + westFirst + ", released " + release, expected, world);
+                }
+            }
+        }
+
+        // The overlap is x 8 to 15; each keeps the half nearer its centre
+        assertEquals(Material.STONE, expected.get(VoxelMap.pack(11, 64, 4)));
+        assertEquals(Material.DIRT, expected.get(VoxelMap.pack(12, 64, 4)));
+        assertEquals(Material.STONE, expected.get(VoxelMap.pack(0, 64, 15)));
+        assertEquals(Material.DIRT, expected.get(VoxelMap.pack(23, 64, 15)));
+    }
+
+    @Test
+    public void leavesTilesPlacedWithAnotherOffsetAlone() {
+        TileRecord coarse = coarse(), fine = fine();
+        fine.beginPlacing(5);
+        OverlapMerge merged = OverlapMerge.resolve(coarse, Arrays.asList(coarse, fine),
+            coarse.blocks, coarse.fills, 0, true);
+        assertEquals(coarse.blocks, merged.blocks);
+        assertEquals(coarse.fills, merged.fills);
+        assertEquals(0, merged.cleared.size());
+    }
+
+    // Places first, optionally releases it as TileCache would, then places second
+    private static Map<Long, Material> placeBoth(TileRecord first, TileRecord second, boolean release) {
+        Map<Long, Material> world = new HashMap<>();
+        List<TileRecord> nearby = Arrays.asList(first, second);
+        place(world, first, nearby);
+        if (release) {
+            first.evict();
+            first.releasePayload();
+        }
+        place(world, second, nearby);
+        return world;
+    }
+
+    private static void place(Map<Long, Material> world, TileRecord record, List<TileRecord> nearby) {
+        record.beginPlacing(0);
+        OverlapMerge merged = OverlapMerge.resolve(record, nearby, record.blocks, record.fills, 0, true);
+        for (BlockFill fill : merged.cleared) {
+            apply(world, fill);
+        }
+        merged.blocks.forEach(world::put);
+        for (BlockFill fill : merged.fills) {
+            apply(world, fill);
+        }
+        record.finishPlacing();
+    }
+
+    private static void apply(Map<Long, Material> world, BlockFill fill) {
+        for (int y = fill.minY; y <= fill.maxY; y++) {
+            for (int z = fill.minZ; z <= fill.maxZ; z++) {
+                for (int x = fill.minX; x <= fill.maxX; x++) {
+                    if (fill.material == Material.AIR) {
+                        world.remove(VoxelMap.pack(x, y, z));
+                    } else {
+                        world.put(VoxelMap.pack(x, y, z), fill.material);
+                    }
+                }
+            }
+        }
+    }
+
+    // 32 by 32: a floor at y 64, a block at y 70 over the fine tile and a fill across it
+    private static TileRecord coarse() {
+        VoxelMap blocks = new VoxelMap();
+        for (int z = 0; z < 32; z++) {
+            for (int x = 0; x < 32; x++) {
+                blocks.put(x, 64, z, Material.STONE);
+            }
+        }
+        blocks.put(12, 70, 12, Material.STONE);
+        return record("coarse", blocks,
+            Collections.singletonList(new BlockFill(4, 70, 4, 19, 71, 19, Material.STONE)));
+    }
+
+    // 8 by 8 at x and z 8 to 15: its corners at y 64 and one block at y 66
+    private static TileRecord fine() {
+        VoxelMap blocks = new VoxelMap();
+        blocks.put(8, 64, 8, Material.DIRT);
+        blocks.put(15, 64, 8, Material.DIRT);
+        blocks.put(8, 64, 15, Material.DIRT);
+        blocks.put(15, 64, 15, Material.DIRT);
+        blocks.put(12, 66, 12, Material.DIRT);
+        return record("fine", blocks, Collections.emptyList());
+    }
+
+    // A 16 by 16 floor starting at minX
+    private static TileRecord square(String id, int minX, Material material) {
+        VoxelMap blocks = new VoxelMap();
+        for (int z = 0; z < 16; z++) {
+            for (int x = minX; x < minX + 16; x++) {
+                blocks.put(x, 64, z, material);
+            }
+        }
+        return record(id, blocks, Collections.emptyList());
+    }
+
+    private static TileRecord record(String id, VoxelMap blocks, List<BlockFill> fills) {
+        TileRecord record = new TileRecord(id, new SectionStore(), null);
+        record.add(blocks, fills);
+        return record;
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.voxelearth;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link RleDecoder} with the ByteArrayOutputStream based
+ * decompressChunkData it replaced, decoding all 64 sparse 32^3 chunks of
+ * a synthetic 128^3 tile.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ *           -Dexec.mainClass=com.example.voxelearth.RleDecoderBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RleDecoderBenchmark {
+
+    private static final int CHUNK = 32;
+    private static final int CHUNKS_PER_TILE = 64;
+
+    /** Thickness of the synthetic surface shell; 1 is ~3% occupancy, 8 is ~25%. */
+    @Param({"1", "2", "8"})
+    public int shell;
+
+    private byte[] fileData;
+    private ByteBuffer mapped;
+    private int[] offsets;
+    private int[] compressedSizes;
+    private int[] uncompressedSizes;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        offsets = new int[CHUNKS_PER_TILE];
+        compressedSizes = new int[CHUNKS_PER_TILE];
+        uncompressedSizes = new int[CHUNKS_PER_TILE];
+
+        for (int i = 0; i < CHUNKS_PER_TILE; i++) {
+            byte[] raw = sparseChunk(random, shell);
+            byte[] packed = compress(raw);
+            offsets[i] = file.size();
+            compressedSizes[i] = packed.length;
+            uncompressedSizes[i] = raw.length;
+            file.write(packed, 0, packed.length);
+        }
+
+        fileData = file.toByteArray();
+        mapped = ByteBuffer.allocateDirect(fileData.length).order(ByteOrder.LITTLE_ENDIAN);
+        mapped.put(fileData).flip();
+    }
+
+    @Benchmark
+    public void legacyDecompress(Blackhole bh) {
+        for (int i = 0; i < CHUNKS_PER_TILE; i++) {
+            byte[] compData = Arrays.copyOfRange(fileData, offsets[i], offsets[i] + compressedSizes[i]);
+            bh.consume(legacyDecompressChunkData(compData, uncompressedSizes[i]));
+        }
+    }
+
+    @Benchmark
+    public void rleDecoder(Blackhole bh) {
+        RleDecoder decoder = RleDecoder.get();
+        for (int i = 0; i < CHUNKS_PER_TILE; i++) {
+            ByteBuffer slice = mapped.duplicate();
+            slice.position(offsets[i]).limit(offsets[i] + compressedSizes[i]);
+            bh.consume(decoder.decode(slice, uncompressedSizes[i]));
+        }
+        bh.consume(decoder.buffer());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RleDecoderBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    /**
+     * Builds the uncompressed payload of a chunkType 2 chunk: a bitmask
+     * followed by one u16 color per set bit. Occupied cells form a wavy
+     * surface with spatially coherent colors, like a tile's roof or
+     * terrain, rather than random noise that would never compress.
+     */
+    static byte[] sparseChunk(Random random, int shell) {
+        int cells = CHUNK * CHUNK * CHUNK;
+        byte[] bitmask = new byte[cells / 8];
+        short[] colors = new short[cells];
+        int occupied = 0;
+
+        double phaseX = random.nextDouble() * Math.PI * 2;
+        double phaseY = random.nextDouble() * Math.PI * 2;
+        int baseColor = 1 + random.nextInt(200);
+
+        for (int z = 0; z < CHUNK; z++) {
+            for (int y = 0; y < CHUNK; y++) {
+                for (int x = 0; x < CHUNK; x++) {
+                    int height = (int) (CHUNK / 2 + 6 * Math.sin(x / 5.0 + phaseX) + 6 * Math.cos(y / 7.0 + phaseY));
+                    if (z < height || z >= height + shell) continue;
+                    int cell = x + y * CHUNK + z * CHUNK * CHUNK;
+                    bitmask[cell >> 3] |= (byte) (1 << (cell & 7));
+                    colors[occupied++] = (short) (baseColor + ((x / 4 + y / 4) & 7));
+                }
+            }
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(bitmask.length + occupied * 2).order(ByteOrder.LITTLE_ENDIAN);
+        out.put(bitmask);
+        for (int i = 0; i < occupied; i++) {
+            out.putShort(colors[i]);
+        }
+        return out.array();
+    }
+
+    static byte[] compress(byte[] in) {
+        return RleEncoder.encode(in, in.length);
+    }
+
+    /** The decompressChunkData implementation RleDecoder replaced, kept as the baseline. */
+    private static byte[] legacyDecompressChunkData(byte[] compData, int uncompressedSize) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(uncompressedSize);
+        int pos = 0;
+
+        while (pos < compData.length && out.size() < uncompressedSize) {
+            int header = compData[pos++] & 0xFF;
+
+            if (header <= 127) { // Literal run
+                int len = header + 1;
+                if (pos + len > compData.length) break;
+                out.write(compData, pos, len);
+                pos += len;
+            } else { // RLE run
+                int runLength = 1 - (byte) header;
+                if (pos >= compData.length) break;
+                byte val = compData[pos++];
+                for (int i = 0; i < runLength; i++) {
+                    if (out.size() >= uncompressedSize) break;
+                    out.write(val);
+                }
+            }
+        }
+
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.voxelearth;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class RleDecoderTest {
+
+    @Test
+    public void decodesLiteralAndRepeatPackets() {
+        // 3 literal bytes, a run of 4, then a single literal
+        byte[] src = {2, 10, 11, 12, -3, 9, 0, 42};
+        assertDecodes(src, new byte[]{10, 11, 12, 9, 9, 9, 9, 42});
+    }
+
+    @Test
+    public void decodesPacketsAtTheLengthLimits() {
+        // 127 as a header is a 128-byte literal, -127 a 128-byte run
+        byte[] literal = new byte[128];
+        for (int i = 0; i < literal.length; i++) {
+            literal[i] = (byte) i;
+        }
+        byte[] src = new byte[1 + 128 + 2];
+        src[0] = 127;
+        System.arraycopy(literal, 0, src, 1, 128);
+        src[129] = -127;
+        src[130] = 5;
+
+        byte[] expected = Arrays.copyOf(literal, 256);
+        Arrays.fill(expected, 128, 256, (byte) 5);
+        assertDecodes(src, expected);
+    }
+
+    @Test
+    public void stopsAtUncompressedSize() {
+        // Three 128-byte runs, but only 100 bytes wanted
+        ByteBuffer src = ByteBuffer.wrap(new byte[]{-127, 5, -127, 5, -127, 5});
+        RleDecoder decoder = RleDecoder.get();
+        assertEquals(100, decoder.decode(src, 100));
+        byte[] expected = new byte[100];
+        Arrays.fill(expected, (byte) 5);
+        assertArrayEquals(expected, Arrays.copyOf(decoder.buffer(), 100));
+        assertEquals(4, src.remaining());
+    }
+
+    @Test
+    public void reportsATruncatedSource() {
+        // A run of two, then a literal packet announcing 4 bytes with only 2 present
+        ByteBuffer src = ByteBuffer.wrap(new byte[]{-1, 7, 3, 1, 2});
+        RleDecoder decoder = RleDecoder.get();
+        assertEquals(2, decoder.decode(src, 6));
+        assertArrayEquals(new byte[]{7, 7}, Arrays.copyOf(decoder.buffer(), 2));
+    }
+
+    @Test
+    public void growsForLargeOutputs() {
+        int size = 32 * 32 * 32 * 4;
+        byte[] src = new byte[size / 128 * 2];
+        for (int i = 0; i < src.length; i += 2) {
+            src[i] = -127;
+            src[i + 1] = 3;
+        }
+        byte[] expected = new byte[size];
+        Arrays.fill(expected, (byte) 3);
+        assertDecodes(src, expected);
+    }
+
+    private static void assertDecodes(byte[] src, byte[] expected) {
+        RleDecoder decoder = RleDecoder.get();
+        ByteBuffer buf = ByteBuffer.wrap(src);
+        assertEquals(expected.length, decoder.decode(buf, expected.length));
+        assertEquals(0, buf.remaining());
+        assertArrayEquals(expected, Arrays.copyOf(decoder.buffer(), expected.length));
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.voxelearth;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class RleEncoderTest {
+
+    @Test
+    public void roundTripsEdgeCases() {
+        roundTrip(new byte[0]);
+        roundTrip(new byte[]{7});
+        roundTrip(new byte[]{7, 7});
+        roundTrip(new byte[]{7, 7, 7});
+        // Runs and literals at and just past the 128-byte packet limit
+        for (int length : new int[]{127, 128, 129, 130, 256, 257, 1000}) {
+            byte[] run = new byte[length];
+            Arrays.fill(run, (byte) -3);
+            roundTrip(run);
+            byte[] literal = new byte[length];
+            for (int i = 0; i < length; i++) {
+                literal[i] = (byte) i;
+            }
+            roundTrip(literal);
+        }
+    }
+
+    @Test
+    public void roundTripsMixedRunsAndLiterals() {
+        Random random = new Random(1);
+        for (int n = 0; n < 200; n++) {
+            byte[] data = new byte[random.nextInt(5000)];
+            int i = 0;
+            while (i < data.length) {
+                int len = Math.min(data.length - i, 1 + random.nextInt(300));
+                if (random.nextBoolean()) {
+                    Arrays.fill(data, i, i + len, (byte) random.nextInt(4));
+                } else {
+                    for (int j = i; j < i + len; j++) {
+                        data[j] = (byte) random.nextInt(256);
+                    }
+                }
+                i += len;
+            }
+            roundTrip(data);
+        }
+    }
+
+    private static void roundTrip(byte[] data) {
+        byte[] encoded = RleEncoder.encode(data, data.length);
+        RleDecoder decoder = RleDecoder.get();
+        ByteBuffer src = ByteBuffer.wrap(encoded);
+        assertEquals(data.length, decoder.decode(src, data.length));
+        assertEquals(0, src.remaining());
+        assertArrayEquals(data, Arrays.copyOf(decoder.buffer(), data.length));
+    }
+}
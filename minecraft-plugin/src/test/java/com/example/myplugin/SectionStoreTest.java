@@ -0,0 +1,62 @@
+package com.example.voxelearth;
+
+import org.bukkit.Material;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SectionStoreTest {
+
+    @Test
+    public void keepsVoxelsAcrossWidenings() {
+        // 300 materials in one section take it from 1 bit per cell through 2, 4 and 8 to 16
+        Material[] materials = Material.values();
+        SectionStore store = new SectionStore();
+        int count = 300;
+        for (int i = 0; i < count; i++) {
+            store.put(i & 15, i >> 8, (i >> 4) & 15, materials[i]);
+            for (int j = 0; j <= i; j++) {
+                assertEquals("voxel " + j + " after " + (i + 1) + " materials",
+                    materials[j], store.get(j & 15, j >> 8, (j >> 4) & 15));
+            }
+        }
+        assertEquals(count, store.size());
+        assertEquals(1, store.sectionCount());
+        store.clear();
+    }
+
+    @Test
+    public void tracksSizeAndVisitsEveryVoxel() {
+        SectionStore store = new SectionStore();
+        Map<Long, Material> expected = new HashMap<>();
+        Material[] materials = {Material.STONE, Material.DIRT, Material.GRASS_BLOCK};
+        for (int x = -20; x < 20; x += 3) {
+            for (int y = -5; y < 40; y += 7) {
+                for (int z = -20; z < 20; z += 5) {
+                    Material material = materials[Math.floorMod(x + y + z, materials.length)];
+                    store.put(x, y, z, material);
+                    expected.put(VoxelMap.pack(x, y, z), material);
+                }
+            }
+        }
+        // Replacing a voxel doesn't change the count
+        store.put(-20, -5, -20, Material.OAK_LOG);
+        expected.put(VoxelMap.pack(-20, -5, -20), Material.OAK_LOG);
+
+        assertEquals(expected.size(), store.size());
+        assertNull(store.get(1, 1, 1));
+        Map<Long, Material> visited = new HashMap<>();
+        store.forEach((pos, material) -> assertNull(visited.put(pos, material)));
+        assertEquals(expected, visited);
+        assertTrue(expected.containsKey(store.anyPosition()));
+
+        store.clear();
+        assertEquals(0, store.size());
+        assertTrue(store.isEmpty());
+    }
+}
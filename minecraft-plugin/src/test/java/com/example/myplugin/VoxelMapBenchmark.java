@@ -0,0 +1,155 @@
+package com.example.voxelearth;
+
+import org.bukkit.Material;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link VoxelMap} with the "x,y,z" String-keyed HashMap it
+ * replaced, building and then walking the voxels of a synthetic 128^3
+ * tile the way decoding and placeBlocks do. Scores are per voxel; the GC
+ * profiler's gc.alloc.rate.norm is the bytes allocated per voxel.
+ *
+ * main() also prints the heap each layout retains per voxel once built.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ *           -Dexec.mainClass=com.example.voxelearth.VoxelMapBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VoxelMapBenchmark {
+
+    private static final int TILE = 128;
+    private static final Material[] MATERIALS = Material.values();
+
+    // A wavy two-block-thick surface, about 2% of the tile
+    private static final int VOXEL_COUNT = 2 * TILE * TILE;
+    private static final int[] VOXELS = surface();
+
+    private Map<String, Material> builtStrings;
+    private VoxelMap builtVoxels;
+
+    @Setup
+    public void setup() {
+        builtStrings = buildStrings();
+        builtVoxels = buildVoxels();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VOXEL_COUNT)
+    public Map<String, Material> stringMapBuild() {
+        return buildStrings();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VOXEL_COUNT)
+    public VoxelMap voxelMapBuild() {
+        return buildVoxels();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VOXEL_COUNT)
+    public void stringMapIterate(Blackhole bh) {
+        for (Map.Entry<String, Material> entry : builtStrings.entrySet()) {
+            String[] parts = entry.getKey().split(",");
+            bh.consume(Integer.parseInt(parts[0]) + Integer.parseInt(parts[1]) + Integer.parseInt(parts[2]));
+            bh.consume(entry.getValue());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VOXEL_COUNT)
+    public void voxelMapIterate(Blackhole bh) {
+        builtVoxels.forEach((pos, material) -> {
+            bh.consume(VoxelMap.x(pos) + VoxelMap.y(pos) + VoxelMap.z(pos));
+            bh.consume(material);
+        });
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        System.out.println(VOXEL_COUNT + " voxels");
+        System.out.printf("String map retains %.1f bytes/voxel%n", retainedPerVoxel(true));
+        System.out.printf("VoxelMap retains %.1f bytes/voxel (table %.1f)%n",
+                retainedPerVoxel(false), (double) buildVoxels().footprintBytes() / VOXEL_COUNT);
+
+        new Runner(new OptionsBuilder()
+                .include(VoxelMapBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+    private static Map<String, Material> buildStrings() {
+        Map<String, Material> map = new HashMap<>();
+        for (int i = 0; i < VOXELS.length; i += 4) {
+            map.put(VOXELS[i] + "," + VOXELS[i + 1] + "," + VOXELS[i + 2], MATERIALS[VOXELS[i + 3]]);
+        }
+        return map;
+    }
+
+    private static VoxelMap buildVoxels() {
+        VoxelMap map = new VoxelMap();
+        for (int i = 0; i < VOXELS.length; i += 4) {
+            map.put(VOXELS[i], VOXELS[i + 1], VOXELS[i + 2], MATERIALS[VOXELS[i + 3]]);
+        }
+        return map;
+    }
+
+    private static double retainedPerVoxel(boolean strings) {
+        Runtime rt = Runtime.getRuntime();
+        long before = usedAfterGc(rt);
+        Object map = strings ? buildStrings() : buildVoxels();
+        long after = usedAfterGc(rt);
+        double perVoxel = (double) (after - before) / VOXEL_COUNT;
+        // Keep the map reachable until measured
+        if (map.hashCode() == 42) System.out.print("");
+        return perVoxel;
+    }
+
+    private static long usedAfterGc(Runtime rt) {
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    // {x, y, z, materialOrdinal} per voxel, in tile coordinates offset as decoded tiles are
+    private static int[] surface() {
+        int[] out = new int[VOXEL_COUNT * 4];
+        int n = 0;
+        for (int z = 0; z < TILE; z++) {
+            for (int x = 0; x < TILE; x++) {
+                int height = (int) (TILE / 2 + 10 * Math.sin(x / 9.0) + 10 * Math.cos(z / 13.0));
+                for (int y = height; y < height + 2; y++) {
+                    out[n++] = x - 300;
+                    out[n++] = y;
+                    out[n++] = z + 1200;
+                    out[n++] = ((x / 8 + z / 8) & 7) % MATERIALS.length;
+                }
+            }
+        }
+        if (n != out.length) throw new IllegalStateException("Unexpected voxel count " + n / 4);
+        return out;
+    }
+}
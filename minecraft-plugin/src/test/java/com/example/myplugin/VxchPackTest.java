@@ -0,0 +1,114 @@
+package com.example.voxelearth;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class VxchPackTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void dropsATornTailOnOpen() throws IOException {
+        File file = new File(folder.getRoot(), "tiles.vxpack");
+        VxchPack pack = new VxchPack(file);
+        pack.add("a", payload("first"));
+        pack.add("b", payload("second"));
+        pack.close();
+        long intact = file.length();
+
+        // An entry cut off mid-payload, as after a crash during an append
+        byte[] key = "c".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer torn = ByteBuffer.allocate(2 + key.length + 8 + 10).order(ByteOrder.LITTLE_ENDIAN);
+        torn.putShort((short) key.length).put(key).putLong(100).put(new byte[10]);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length());
+            raf.write(torn.array());
+        }
+
+        pack = new VxchPack(file);
+        assertEquals(intact, file.length());
+        assertFalse(pack.contains("c"));
+        assertPayload(pack, "a", "first");
+        assertPayload(pack, "b", "second");
+
+        // Appends go where the torn entry was
+        pack.add("c", payload("third"));
+        pack.close();
+        pack = new VxchPack(file);
+        assertPayload(pack, "c", "third");
+        pack.close();
+    }
+
+    @Test
+    public void keepsLiveEntriesThroughCompaction() throws IOException {
+        File file = new File(folder.getRoot(), "tiles.vxpack");
+        VxchPack pack = new VxchPack(file);
+        pack.add("a", payload("old a"));
+        pack.add("b", payload("b"));
+        pack.add("c", payload("c"));
+        pack.add("a", payload("new a"));
+        pack.remove("c");
+        long before = file.length();
+
+        ByteBuffer mappedBefore = pack.map("b");
+        assertTrue(pack.compact());
+        assertTrue(file.length() < before);
+        assertEquals(2, pack.tileIds().size());
+        assertPayload(pack, "a", "new a");
+        assertPayload(pack, "b", "b");
+        assertNull(pack.map("c"));
+        // Mappings taken before the swap still read the old file
+        assertEquals("b", string(mappedBefore));
+
+        pack.add("d", payload("d"));
+        pack.close();
+        pack = new VxchPack(file);
+        assertEquals(3, pack.tileIds().size());
+        assertPayload(pack, "a", "new a");
+        assertPayload(pack, "b", "b");
+        assertPayload(pack, "d", "d");
+        pack.close();
+    }
+
+    @Test
+    public void staysUsableAfterClear() throws IOException {
+        File file = new File(folder.getRoot(), "tiles.vxpack");
+        VxchPack pack = new VxchPack(file);
+        pack.add("a", payload("a"));
+        pack.clear();
+        assertFalse(pack.contains("a"));
+        pack.add("b", payload("b"));
+        assertPayload(pack, "b", "b");
+        pack.close();
+    }
+
+    private static ByteBuffer payload(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void assertPayload(VxchPack pack, String tileId, String expected) throws IOException {
+        assertTrue(pack.contains(tileId));
+        assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8), string(pack.map(tileId)).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String string(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.remaining()];
+        buf.duplicate().get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
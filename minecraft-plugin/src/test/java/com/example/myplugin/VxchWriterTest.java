@@ -0,0 +1,124 @@
+package com.example.voxelearth;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.Color;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class VxchWriterTest {
+
+    private static final int V1_CHUNK_SIZE = 32;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void convertKeepsEveryVoxel() throws IOException {
+        // Sizes that aren't chunk multiples, so edge chunks are partial in both versions
+        int sizeX = 40, sizeY = 20, sizeZ = 35;
+        short[] voxels = new short[sizeX * sizeY * sizeZ];
+        Random random = new Random(7);
+        for (int i = 0; i < voxels.length; i++) {
+            if (random.nextInt(5) == 0) voxels[i] = (short) (1 + random.nextInt(4));
+        }
+        // A solid 16^3 block of one color, which version 2 stores as a SOLID chunk
+        for (int z = 16; z < 32; z++) {
+            for (int y = 0; y < 16; y++) {
+                for (int x = 16; x < 32; x++) {
+                    voxels[x + y * sizeX + z * sizeX * sizeY] = 3;
+                }
+            }
+        }
+        List<Color> palette = Arrays.asList(null, Color.RED, Color.GREEN, Color.BLUE, new Color(10, 20, 30, 40));
+
+        File v1File = folder.newFile("tile_128.vxch");
+        writeV1(v1File, sizeX, sizeY, sizeZ, voxels, palette);
+        VxchFile v1 = VxchFile.open(v1File);
+        assertEquals(VxchFile.VERSION_1, v1.version);
+        assertArrayEquals(voxels, VxchWriter.readVoxels(v1));
+
+        File v2File = new File(folder.getRoot(), "tile_v2.vxch");
+        VxchWriter.convert(v1, v2File, i -> "minecraft:block_" + i);
+        VxchFile v2 = VxchFile.open(v2File);
+        assertEquals(VxchFile.VERSION_2, v2.version);
+        assertEquals(VxchFile.V2_CHUNK_SIZE, v2.chunkSize);
+        assertEquals(palette, v2.getPalette());
+        assertEquals(Arrays.asList("minecraft:block_1", "minecraft:block_2", "minecraft:block_3", "minecraft:block_4"),
+            v2.getBlockPalette());
+        assertArrayEquals(voxels, VxchWriter.readVoxels(v2));
+    }
+
+    // Version 1 as cuda_voxelizer writes it: 32^3 chunks, no block palette, chunkType 2 only
+    private static void writeV1(File file, int sizeX, int sizeY, int sizeZ, short[] voxels, List<Color> palette)
+            throws IOException {
+        int cs = V1_CHUNK_SIZE;
+        int ccx = (sizeX + cs - 1) / cs, ccy = (sizeY + cs - 1) / cs, ccz = (sizeZ + cs - 1) / cs;
+        int colorCount = palette.size() - 1;
+        int chunkCount = ccx * ccy * ccz;
+        long dataStart = 26 + colorCount * 4L + chunkCount * 20L;
+
+        ByteBuffer table = ByteBuffer.allocate(chunkCount * 20).order(ByteOrder.LITTLE_ENDIAN);
+        ByteArrayOutputStream payloads = new ByteArrayOutputStream();
+        List<Byte> raw = new ArrayList<>();
+        for (int cz = 0; cz < ccz; cz++) {
+            for (int cy = 0; cy < ccy; cy++) {
+                for (int cx = 0; cx < ccx; cx++) {
+                    int x0 = cx * cs, y0 = cy * cs, z0 = cz * cs;
+                    int dx = Math.min(cs, sizeX - x0), dy = Math.min(cs, sizeY - y0), dz = Math.min(cs, sizeZ - z0);
+                    int cells = dx * dy * dz;
+                    byte[] bitmask = new byte[(cells + 7) / 8];
+                    raw.clear();
+                    for (int cell = 0; cell < cells; cell++) {
+                        int x = x0 + cell % dx, y = y0 + (cell / dx) % dy, z = z0 + cell / (dx * dy);
+                        short ci = voxels[x + y * sizeX + z * sizeX * sizeY];
+                        if (ci == 0) continue;
+                        bitmask[cell >> 3] |= (byte) (1 << (cell & 7));
+                        raw.add((byte) ci);
+                        raw.add((byte) (ci >> 8));
+                    }
+                    if (raw.isEmpty()) {
+                        table.putLong(0).putInt(0).putInt(0).putShort((short) 0).putShort((short) 0);
+                        continue;
+                    }
+                    byte[] data = Arrays.copyOf(bitmask, bitmask.length + raw.size());
+                    for (int i = 0; i < raw.size(); i++) {
+                        data[bitmask.length + i] = raw.get(i);
+                    }
+                    byte[] comp = RleEncoder.encode(data, data.length);
+                    table.putLong(dataStart + payloads.size()).putInt(comp.length).putInt(data.length)
+                        .putShort((short) 2).putShort((short) 0);
+                    payloads.write(comp, 0, comp.length);
+                }
+            }
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(26 + colorCount * 4).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(new byte[]{'V', 'X', 'C', 'H'}).putInt(VxchFile.VERSION_1);
+        header.putShort((short) cs).putShort((short) sizeX).putShort((short) sizeY).putShort((short) sizeZ);
+        header.putShort((short) ccx).putShort((short) ccy).putShort((short) ccz).putInt(colorCount);
+        for (int i = 1; i <= colorCount; i++) {
+            Color c = palette.get(i);
+            header.put((byte) c.getRed()).put((byte) c.getGreen()).put((byte) c.getBlue()).put((byte) c.getAlpha());
+        }
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(header.array());
+            out.write(table.array());
+            payloads.writeTo(out);
+        }
+    }
+}